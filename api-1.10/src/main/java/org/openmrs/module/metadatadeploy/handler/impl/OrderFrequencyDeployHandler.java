@@ -8,6 +8,9 @@ import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Map;
+
 @OpenmrsProfile(openmrsVersion = "1.10.0")
 @Handler(supports = OrderFrequency.class)
 public class OrderFrequencyDeployHandler extends AbstractObjectDeployHandler<OrderFrequency> {
@@ -21,6 +24,14 @@ public class OrderFrequencyDeployHandler extends AbstractObjectDeployHandler<Ord
         return orderService.getOrderFrequencyByUuid(uuid);
     }
 
+    /**
+     * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+     */
+    @Override
+    public Map<String, OrderFrequency> fetchAll(Collection<String> identifiers) {
+        return fetchAllByUuid(OrderFrequency.class, identifiers);
+    }
+
     @Override
     public OrderFrequency save(OrderFrequency obj) {
         OrderFrequency existing = fetch(obj.getUuid());
@@ -23,6 +23,9 @@ import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Deployment handler for order types
  */
@@ -42,6 +45,14 @@ public class OrderTypeDeployHandler extends AbstractObjectDeployHandler<OrderTyp
 		return orderService.getOrderTypeByUuid(uuid);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, OrderType> fetchAll(Collection<String> identifiers) {
+		return fetchAllByUuid(OrderType.class, identifiers);
+	}
+
 	/**
 	 * @see ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
 	 */
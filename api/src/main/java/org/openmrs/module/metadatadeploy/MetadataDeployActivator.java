@@ -17,6 +17,7 @@ package org.openmrs.module.metadatadeploy;
 import org.apache.commons.logging.Log; 
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.ModuleActivator;
+import org.openmrs.module.metadatadeploy.api.impl.DeployMetrics;
 
 /**
  * This class contains the logic that is run every time this module is either started or stopped.
@@ -50,6 +51,8 @@ public class MetadataDeployActivator implements ModuleActivator {
 	 * @see ModuleActivator#started()
 	 */
 	public void started() {
+		DeployMetrics.register();
+
 		log.info("MetadataDeploy started");
 	}
 	
@@ -64,6 +67,8 @@ public class MetadataDeployActivator implements ModuleActivator {
 	 * @see ModuleActivator#stopped()
 	 */
 	public void stopped() {
+		DeployMetrics.unregister();
+
 		log.info("MetadataDeploy stopped");
 	}
 }
\ No newline at end of file
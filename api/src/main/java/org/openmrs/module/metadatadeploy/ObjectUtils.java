@@ -15,21 +15,39 @@
 package org.openmrs.module.metadatadeploy;
 
 import com.thoughtworks.xstream.converters.reflection.ObjectAccessException;
-import com.thoughtworks.xstream.converters.reflection.PureJavaReflectionProvider;
-import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
 import org.hibernate.Hibernate;
 import org.openmrs.OpenmrsObject;
+import org.openmrs.util.OpenmrsUtil;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utility methods for OpenmrsObjects
  */
 public class ObjectUtils {
 
-	final static PureJavaReflectionProvider reflector = new PureJavaReflectionProvider();
+	/**
+	 * Audit fields which are set by the API when an object is saved, and so are ignored when comparing objects
+	 */
+	public static final Set<String> AUDIT_FIELDS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			"creator", "dateCreated", "changedBy", "dateChanged"
+	)));
+
+	// Copy plans by class, computed on first use
+	private static final Map<Class<?>, FieldPlan[]> plans = new ConcurrentHashMap<Class<?>, FieldPlan[]>();
 
 	/**
 	 * Copies an object into another of the same class
@@ -42,51 +60,46 @@ public class ObjectUtils {
 
 		ensureInitialized(target); // TODO figure out if this is necessary
 
-		reflector.visitSerializableFields(source, new ReflectionProvider.Visitor() {
+		for (FieldPlan plan : getPlan(source.getClass())) {
 
-			/**
-			 * @see ReflectionProvider#visitSerializableFields(Object, com.thoughtworks.xstream.converters.reflection.ReflectionProvider.Visitor)
-			 */
-			@Override
-			public void visit(String fieldName, Class type, Class definedIn, Object value) {
+			// Check if field should be excluded from operation
+			if (excludeFields != null && excludeFields.contains(plan.getName())) {
+				continue;
+			}
 
-				// Check if field should be excluded from operation
-				if (excludeFields != null && excludeFields.contains(fieldName)) {
-					return;
-				}
+			Object value = plan.get(source);
 
-				if (Collection.class.isAssignableFrom(type)) {
-					Collection sourceCollection = (Collection) value;
-					Collection targetCollection = (Collection) readField(target, fieldName, definedIn);
+			if (plan.isCollection()) {
+				Collection sourceCollection = (Collection) value;
+				Collection targetCollection = (Collection) plan.get(target);
 
-					if (sourceCollection != null) {
-						for (Object itemInSourceCollection : sourceCollection) {
-							if (itemInSourceCollection instanceof OpenmrsObject) {
-								updateBackReferences(itemInSourceCollection, source, target);
-							}
+				if (sourceCollection != null) {
+					for (Object itemInSourceCollection : sourceCollection) {
+						if (itemInSourceCollection instanceof OpenmrsObject) {
+							updateBackReferences(itemInSourceCollection, source, target);
 						}
 					}
+				}
 
-					// This collection might be Hibernate managed in which case we can't just replace it
-					if (targetCollection != null) {
-						targetCollection.clear();
+				// This collection might be Hibernate managed in which case we can't just replace it
+				if (targetCollection != null) {
+					targetCollection.clear();
 
-						if (sourceCollection != null) {
-							targetCollection.addAll(sourceCollection);
-						}
-					}
-					else {
-						reflector.writeField(target, fieldName, value, definedIn);
-					}
-				} else {
-					if (value instanceof OpenmrsObject) {
-						updateBackReferences(value, source, target);
+					if (sourceCollection != null) {
+						targetCollection.addAll(sourceCollection);
 					}
-
-					reflector.writeField(target, fieldName, value, definedIn);
 				}
+				else {
+					plan.set(target, value);
+				}
+			} else {
+				if (plan.isReference() && value instanceof OpenmrsObject) {
+					updateBackReferences(value, source, target);
+				}
+
+				plan.set(target, value);
 			}
-		});
+		}
 	}
 
 	/**
@@ -101,47 +114,165 @@ public class ObjectUtils {
 	protected static <T extends OpenmrsObject> void updateBackReferences(final Object obj, final T source, final T target) {
 		ensureInitialized(obj);
 
-		reflector.visitSerializableFields(obj, new ReflectionProvider.Visitor() {
-			/**
-			 * @see ReflectionProvider#visitSerializableFields(Object, com.thoughtworks.xstream.converters.reflection.ReflectionProvider.Visitor)
-			 */
-			@Override
-			public void visit(String fieldName, Class type, Class definedIn, Object value) {
-				if (value != null && value == source) {
-					reflector.writeField(obj, fieldName, target, definedIn);
-				}
+		for (FieldPlan plan : getPlan(obj.getClass())) {
+			// Only fields which could hold the source object need to be read
+			if (plan.isReference() && plan.getType().isInstance(source) && plan.get(obj) == source) {
+				plan.set(obj, target);
 			}
-		});
+		}
 	}
 
 	/**
-	 * Ensures that the given object is initialized if its a Hibernate proxy
-	 * @param obj the object
+	 * Checks whether overwriting the target object with the source object would change any of it's fields. References
+	 * to other objects are compared by UUID. Items of collections are matched by UUID, and new items are also compared
+	 * field by field. Audit fields are ignored.
+	 * @param source the source object
+	 * @param target the target object
+	 * @param excludeFields the names of fields to be excluded
+	 * @param <T> the class of both objects
+	 * @return true if any field differs
 	 */
-	protected static void ensureInitialized(Object obj) {
-		if (!Hibernate.isInitialized(obj)) {
-			Hibernate.initialize(obj);
+	public static <T extends OpenmrsObject> boolean differs(T source, T target, Set<String> excludeFields) {
+		ensureInitialized(target);
+
+		if (!source.getClass().isInstance(target)) {
+			return true;
 		}
+
+		for (FieldPlan plan : getPlan(source.getClass())) {
+			String fieldName = plan.getName();
+
+			if (AUDIT_FIELDS.contains(fieldName) || (excludeFields != null && excludeFields.contains(fieldName))) {
+				continue;
+			}
+
+			if (valueDiffers(plan.get(source), plan.get(target))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether two field values differ
+	 * @param source the source value
+	 * @param target the target value
+	 * @return true if values differ
+	 */
+	protected static boolean valueDiffers(Object source, Object target) {
+		if (source == target) {
+			return false;
+		}
+		else if (source == null || target == null) {
+			return true;
+		}
+		else if (source instanceof OpenmrsObject && target instanceof OpenmrsObject) {
+			return !OpenmrsUtil.nullSafeEquals(((OpenmrsObject) source).getUuid(), ((OpenmrsObject) target).getUuid());
+		}
+		else if (source instanceof Collection && target instanceof Collection) {
+			return collectionDiffers((Collection) source, (Collection) target);
+		}
+		else if (source instanceof Date && target instanceof Date) {
+			// Dates loaded from the database may be timestamps which don't equal regular dates
+			return ((Date) source).getTime() != ((Date) target).getTime();
+		}
+		return !source.equals(target);
 	}
 
 	/**
-	 * Reads the value of a field from the given object
-	 * @param object the object
-	 * @param fieldName the name of the field
-	 * @param definedIn the class in the objects hierarchy where the field was defined
-	 * @return the field value
+	 * Checks whether two collections differ
+	 * @param source the source collection
+	 * @param target the target collection
+	 * @return true if collections differ
 	 */
-	protected static Object readField(Object object, String fieldName, Class<?> definedIn) {
-		Field field = reflector.getField(definedIn, fieldName);
-		field.setAccessible(true);
-		Object result;
+	protected static boolean collectionDiffers(Collection<?> source, Collection<?> target) {
+		if (source.size() != target.size()) {
+			return true;
+		}
+
+		Map<String, OpenmrsObject> targetItemsByUuid = new HashMap<String, OpenmrsObject>();
+		for (Object targetItem : target) {
+			if (targetItem instanceof OpenmrsObject) {
+				targetItemsByUuid.put(((OpenmrsObject) targetItem).getUuid(), (OpenmrsObject) targetItem);
+			}
+		}
+
+		for (Object sourceItem : source) {
+			if (sourceItem instanceof OpenmrsObject) {
+				OpenmrsObject sourceObject = (OpenmrsObject) sourceItem;
+				OpenmrsObject targetObject = targetItemsByUuid.get(sourceObject.getUuid());
+
+				if (targetObject == null) {
+					return true;
+				}
+
+				// New items belong to the object which contains them, so must be compared in full
+				if (usesId(sourceObject) && sourceObject.getId() == null && itemDiffers(sourceObject, targetObject)) {
+					return true;
+				}
+			}
+			else if (!target.contains(sourceItem)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether a new collection item differs from an existing item, ignoring the id of the new item
+	 * @param source the new item
+	 * @param target the existing item
+	 * @return true if items differ
+	 */
+	protected static boolean itemDiffers(OpenmrsObject source, OpenmrsObject target) {
+		source.setId(target.getId());
 		try {
-			result = field.get(object);
+			return differs(source, target, null);
+		}
+		finally {
+			source.setId(null);
+		}
+	}
+
+	/**
+	 * Gets the copy plan for the given class, i.e. all of it's serializable (non-static, non-transient) fields with
+	 * superclass fields first
+	 * @param clazz the class
+	 * @return the field plans
+	 */
+	protected static FieldPlan[] getPlan(Class<?> clazz) {
+		FieldPlan[] plan = plans.get(clazz);
+		if (plan == null) {
+			// Superclass fields come first
+			LinkedList<Class<?>> hierarchy = new LinkedList<Class<?>>();
+			for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+				hierarchy.addFirst(c);
+			}
+
+			List<FieldPlan> fields = new ArrayList<FieldPlan>();
+			for (Class<?> c : hierarchy) {
+				for (Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+						fields.add(new FieldPlan(field));
+					}
+				}
+			}
+
+			plan = fields.toArray(new FieldPlan[fields.size()]);
+			plans.put(clazz, plan);
 		}
-		catch (IllegalAccessException e) {
-			throw new ObjectAccessException("Cannot access field " + object.getClass().getName() + "." + field.getName());
+		return plan;
+	}
+
+	/**
+	 * Ensures that the given object is initialized if its a Hibernate proxy
+	 * @param obj the object
+	 */
+	protected static void ensureInitialized(Object obj) {
+		if (!Hibernate.isInitialized(obj)) {
+			Hibernate.initialize(obj);
 		}
-		return result;
 	}
 
 	/**
@@ -158,4 +289,97 @@ public class ObjectUtils {
 			return false;
 		}
 	}
+
+	/**
+	 * A field of a class which has been made accessible and classified once, so that it can be read and written
+	 * without further reflection lookups
+	 */
+	protected static class FieldPlan {
+
+		private final Field field;
+
+		private final boolean collection;
+
+		private final boolean reference;
+
+		protected FieldPlan(Field field) {
+			field.setAccessible(true);
+
+			Class<?> type = field.getType();
+
+			this.field = field;
+			this.collection = Collection.class.isAssignableFrom(type);
+			this.reference = !collection && !isSimpleType(type);
+		}
+
+		/**
+		 * Gets the field name
+		 * @return the name
+		 */
+		public String getName() {
+			return field.getName();
+		}
+
+		/**
+		 * Gets the declared type of the field
+		 * @return the type
+		 */
+		public Class<?> getType() {
+			return field.getType();
+		}
+
+		/**
+		 * Gets whether this field holds a collection
+		 * @return true if field is a collection
+		 */
+		public boolean isCollection() {
+			return collection;
+		}
+
+		/**
+		 * Gets whether this field can hold a reference to another object, such as an OpenmrsObject
+		 * @return true if field can hold a reference
+		 */
+		public boolean isReference() {
+			return reference;
+		}
+
+		/**
+		 * Reads the value of this field
+		 * @param obj the object
+		 * @return the value
+		 */
+		public Object get(Object obj) {
+			try {
+				return field.get(obj);
+			}
+			catch (IllegalAccessException e) {
+				throw new ObjectAccessException("Cannot access field " + obj.getClass().getName() + "." + field.getName());
+			}
+		}
+
+		/**
+		 * Writes the value of this field
+		 * @param obj the object
+		 * @param value the value
+		 */
+		public void set(Object obj, Object value) {
+			try {
+				field.set(obj, value);
+			}
+			catch (IllegalAccessException e) {
+				throw new ObjectAccessException("Cannot access field " + obj.getClass().getName() + "." + field.getName());
+			}
+		}
+
+		/**
+		 * Checks whether fields of the given type can only hold simple values
+		 * @param type the type
+		 * @return true if type is simple
+		 */
+		protected static boolean isSimpleType(Class<?> type) {
+			return type.isPrimitive() || type.isEnum() || type == String.class || type == Boolean.class
+					|| type == Character.class || Number.class.isAssignableFrom(type) || Date.class.isAssignableFrom(type);
+		}
+	}
 }
\ No newline at end of file
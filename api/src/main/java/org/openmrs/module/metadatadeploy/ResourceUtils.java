@@ -0,0 +1,332 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.util.OpenmrsUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Utility methods for loading classpath resources. Resources which are available as files are memory mapped rather
+ * than read through a stream. Resources inside jar files are extracted to a cache directory the first time they are
+ * loaded, and mapped from there, so that they only need to be inflated again when the jar file changes.
+ */
+public class ResourceUtils {
+
+	protected static final Log log = LogFactory.getLog(ResourceUtils.class);
+
+	/**
+	 * Cache directory for extracted resources, relative to the application data directory
+	 */
+	public static final String CACHE_DIRECTORY = "metadatadeploy" + File.separator + "resources";
+
+	/**
+	 * Opens a resource as a stream
+	 * @param loader the class loader
+	 * @param path the resource path
+	 * @return the stream or null if the resource doesn't exist
+	 * @throws IOException if an error occurs
+	 */
+	public static InputStream openResource(ClassLoader loader, String path) throws IOException {
+		ByteBuffer buffer = mapResource(loader, path);
+		if (buffer != null) {
+			return new ByteBufferInputStream(buffer);
+		}
+		return loader.getResourceAsStream(path);
+	}
+
+	/**
+	 * Opens a resource as a reader
+	 * @param loader the class loader
+	 * @param path the resource path
+	 * @param charset the name of the resource character set
+	 * @return the reader or null if the resource doesn't exist
+	 * @throws IOException if an error occurs
+	 */
+	public static Reader openReader(ClassLoader loader, String path, String charset) throws IOException {
+		ByteBuffer buffer = mapResource(loader, path);
+		if (buffer != null) {
+			return new ByteBufferReader(buffer, Charset.forName(charset));
+		}
+
+		InputStream in = loader.getResourceAsStream(path);
+		return in != null ? new InputStreamReader(in, charset) : null;
+	}
+
+	/**
+	 * Memory maps a resource if it's available as a file
+	 * @param loader the class loader
+	 * @param path the resource path
+	 * @return the mapped buffer or null if the resource isn't available as a file
+	 * @throws IOException if an error occurs
+	 */
+	public static ByteBuffer mapResource(ClassLoader loader, String path) throws IOException {
+		File file = getResourceFile(loader, path);
+		if (file == null || file.length() > Integer.MAX_VALUE) {
+			return null;
+		}
+
+		// Mapping remains valid after the file is closed
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Gets a resource as a file, extracting it to the cache directory if it's inside a jar file
+	 * @param loader the class loader
+	 * @param path the resource path
+	 * @return the file or null if the resource isn't available as a file
+	 */
+	public static File getResourceFile(ClassLoader loader, String path) {
+		return getResourceFile(loader, path, getCacheDirectory());
+	}
+
+	/**
+	 * Gets a resource as a file, extracting it to the given cache directory if it's inside a jar file
+	 * @param loader the class loader
+	 * @param path the resource path
+	 * @param cacheDir the cache directory for extracted resources (may be null)
+	 * @return the file or null if the resource isn't available as a file
+	 */
+	public static File getResourceFile(ClassLoader loader, String path, File cacheDir) {
+		URL url = loader.getResource(path);
+		if (url == null) {
+			return null;
+		}
+
+		if ("file".equals(url.getProtocol())) {
+			File file = toFile(url);
+			return file.isFile() ? file : null;
+		}
+		else if ("jar".equals(url.getProtocol()) && cacheDir != null) {
+			try {
+				return extractResource(url, cacheDir);
+			}
+			catch (IOException ex) {
+				log.warn("Unable to extract resource " + url + " to " + cacheDir, ex);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Extracts a resource from a jar file, unless it has already been extracted since the jar file was last modified
+	 * @param url the jar URL of the resource
+	 * @param cacheDir the cache directory
+	 * @return the extracted file or null if the jar isn't a local file
+	 * @throws IOException if an error occurs
+	 */
+	protected static File extractResource(URL url, File cacheDir) throws IOException {
+		String spec = url.getFile();
+		int separator = spec.indexOf("!/");
+		if (separator < 0) {
+			return null;
+		}
+
+		URL jarUrl = new URL(spec.substring(0, separator));
+		if (!"file".equals(jarUrl.getProtocol())) {
+			return null;
+		}
+
+		File jarFile = toFile(jarUrl);
+		String entryName = spec.substring(separator + 2);
+
+		// Jar path is hashed so that jars with the same name don't share extracted resources
+		String jarDirName = jarFile.getName() + "-" + Integer.toHexString(jarFile.getAbsolutePath().hashCode());
+		File extracted = new File(new File(cacheDir, jarDirName), entryName);
+
+		if (extracted.isFile() && extracted.lastModified() == jarFile.lastModified()) {
+			return extracted;
+		}
+
+		JarFile jar = new JarFile(jarFile);
+		try {
+			JarEntry entry = jar.getJarEntry(entryName);
+			if (entry == null) {
+				return null;
+			}
+
+			File dir = extracted.getParentFile();
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Unable to create directory " + dir);
+			}
+
+			// Extract to a temporary file first so that a partly extracted resource is never used
+			File temp = File.createTempFile(extracted.getName(), ".tmp", dir);
+			try {
+				OpenmrsUtil.copyFile(jar.getInputStream(entry), new FileOutputStream(temp));
+
+				temp.setLastModified(jarFile.lastModified());
+
+				if (!temp.renameTo(extracted) && !(extracted.delete() && temp.renameTo(extracted))) {
+					throw new IOException("Unable to move extracted resource to " + extracted);
+				}
+			}
+			finally {
+				temp.delete();
+			}
+
+			log.debug("Extracted resource " + entryName + " from " + jarFile + " to " + extracted);
+
+			return extracted;
+		}
+		finally {
+			jar.close();
+		}
+	}
+
+	/**
+	 * Gets the cache directory for extracted resources
+	 * @return the directory or null if the application data directory isn't available
+	 */
+	protected static File getCacheDirectory() {
+		try {
+			return new File(OpenmrsUtil.getApplicationDataDirectory(), CACHE_DIRECTORY);
+		}
+		catch (Exception ex) {
+			log.debug("Application data directory is not available", ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Converts a file URL to a file
+	 * @param url the URL
+	 * @return the file
+	 */
+	protected static File toFile(URL url) {
+		try {
+			return new File(url.toURI());
+		}
+		catch (URISyntaxException ex) {
+			return new File(url.getPath());
+		}
+	}
+
+	/**
+	 * Input stream which reads from a byte buffer
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		public ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(bytes, off, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+	/**
+	 * Reader which decodes characters directly from a byte buffer. Like InputStreamReader, malformed input is replaced
+	 * rather than reported.
+	 */
+	private static class ByteBufferReader extends Reader {
+
+		private final ByteBuffer buffer;
+
+		private final CharsetDecoder decoder;
+
+		private boolean endOfInput = false;
+
+		public ByteBufferReader(ByteBuffer buffer, Charset charset) {
+			this.buffer = buffer;
+			this.decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+
+		@Override
+		public int read(char[] chars, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (endOfInput) {
+				return -1;
+			}
+
+			CharBuffer out = CharBuffer.wrap(chars, off, len);
+
+			CoderResult result = decoder.decode(buffer, out, true);
+			if (result.isUnderflow()) {
+				result = decoder.flush(out);
+				if (result.isUnderflow()) {
+					endOfInput = true;
+				}
+			}
+
+			int count = out.position() - off;
+			return count > 0 ? count : (endOfInput ? -1 : 0);
+		}
+
+		@Override
+		public void close() {
+			endOfInput = true;
+		}
+	}
+}
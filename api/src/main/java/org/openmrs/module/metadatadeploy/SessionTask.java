@@ -0,0 +1,111 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy;
+
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Task for running work on another thread. The task is given it's own Hibernate session with the user context of the
+ * thread which created the task, and optionally it's own transaction.
+ */
+public abstract class SessionTask<V> implements Callable<V> {
+
+	private final UserContext userContext;
+
+	private final PlatformTransactionManager transactionManager;
+
+	private final int isolationLevel;
+
+	/**
+	 * Creates a task which runs without a transaction of it's own. This must be called on the thread whose user
+	 * context should be used.
+	 */
+	public SessionTask() {
+		this(null);
+	}
+
+	/**
+	 * Creates a task which runs in a new transaction. This must be called on the thread whose user context should be
+	 * used.
+	 * @param transactionManager the transaction manager (may be null for no transaction)
+	 */
+	public SessionTask(PlatformTransactionManager transactionManager) {
+		this(transactionManager, TransactionDefinition.ISOLATION_DEFAULT);
+	}
+
+	/**
+	 * Creates a task which runs in a new transaction with the given isolation level. This must be called on the thread
+	 * whose user context should be used.
+	 * @param transactionManager the transaction manager (may be null for no transaction)
+	 * @param isolationLevel the isolation level, e.g. {@link TransactionDefinition#ISOLATION_READ_COMMITTED}
+	 */
+	public SessionTask(PlatformTransactionManager transactionManager, int isolationLevel) {
+		this.userContext = Context.getUserContext();
+		this.transactionManager = transactionManager;
+		this.isolationLevel = isolationLevel;
+	}
+
+	/**
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	@Override
+	public V call() throws Exception {
+		Context.openSession();
+		try {
+			Context.setUserContext(userContext);
+
+			if (transactionManager == null) {
+				return doInSession();
+			}
+
+			TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+			transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+			transactionTemplate.setIsolationLevel(isolationLevel);
+			return transactionTemplate.execute(new TransactionCallback<V>() {
+				@Override
+				public V doInTransaction(TransactionStatus status) {
+					try {
+						return doInSession();
+					}
+					catch (RuntimeException ex) {
+						throw ex;
+					}
+					catch (Exception ex) {
+						throw new APIException(ex.getMessage(), ex);
+					}
+				}
+			});
+		}
+		finally {
+			Context.closeSession();
+		}
+	}
+
+	/**
+	 * Performs the work of this task
+	 * @return the result
+	 * @throws Exception if an error occurs
+	 */
+	protected abstract V doInSession() throws Exception;
+}
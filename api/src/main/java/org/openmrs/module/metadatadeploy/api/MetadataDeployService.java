@@ -16,13 +16,16 @@ package org.openmrs.module.metadatadeploy.api;
 
 import org.openmrs.OpenmrsObject;
 import org.openmrs.api.APIException;
+import org.openmrs.module.metadatadeploy.bundle.InstallLane;
 import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.source.InstallCallback;
 import org.openmrs.module.metadatadeploy.source.ObjectSource;
 import org.openmrs.module.metadatasharing.ImportMode;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service for metadata deployment
@@ -31,9 +34,10 @@ import java.util.List;
 public interface MetadataDeployService {
 
 	/**
-	 * Installs a collection of bundles
+	 * Installs a collection of bundles. Independent bundles may be installed in parallel if more than one install
+	 * thread has been configured, in which case each bundle is installed in it's own transaction.
 	 * @param bundles the bundles
-	 * @throws APIException if an error occurs
+	 * @throws APIException if an error occurs, or if bundle requirements are missing or cyclic
 	 */
 	void installBundles(Collection<MetadataBundle> bundles) throws APIException;
 
@@ -74,6 +78,16 @@ public interface MetadataDeployService {
 	 */
 	<T extends OpenmrsObject> T installObject(T incoming);
 
+	/**
+	 * Installs a collection of incoming objects. This is equivalent to installing each object individually, but
+	 * existing objects are fetched in batches rather than one at a time.
+	 * @param incoming the incoming objects
+	 * @param <T> the object type
+	 * @return the installed objects in the same order as the incoming objects
+	 * @throws APIException if an error occurs
+	 */
+	<T extends OpenmrsObject> List<T> installObjects(Collection<T> incoming) throws APIException;
+
 	/**
 	 * Installs all objects from the given source
 	 * @param source the object source
@@ -83,6 +97,42 @@ public interface MetadataDeployService {
 	 */
 	<T extends OpenmrsObject> List<T> installFromSource(ObjectSource<T> source) throws APIException;
 
+	/**
+	 * Installs all objects from the given source in chunks, without keeping the installed objects. After each chunk
+	 * the session is flushed and cleared, so objects loaded before this call should not be used afterwards.
+	 * @param source the object source
+	 * @param chunkSize the number of objects to install between each flush and clear of the session
+	 * @param callback the callback for each installed object (may be null)
+	 * @param <T> the object type
+	 * @return the number of installed objects
+	 * @throws APIException if an error occurs
+	 */
+	<T extends OpenmrsObject> int installFromSource(ObjectSource<T> source, int chunkSize, InstallCallback<T> callback) throws APIException;
+
+	/**
+	 * Installs groups of independent objects. Lanes may be run at the same time in separate transactions if more than
+	 * one install thread has been configured, otherwise they are run one after another in the current transaction.
+	 * Lanes of bundles which are already being installed in parallel are also run one after another, as the install
+	 * threads are already in use. Either way, this returns once all lanes have finished.
+	 *
+	 * When lanes run in separate transactions, each lane commits as soon as it finishes, and isn't rolled back if the
+	 * bundle later fails. Lanes must therefore be installed before the bundle installs or changes anything else.
+	 * @param lanes the lanes
+	 * @throws APIException if the bundle has already written something, or if a lane fails
+	 */
+	void installLanes(List<InstallLane> lanes) throws APIException;
+
+	/**
+	 * Sets the values of many global properties, creating any which don't exist. Existing properties are read in one
+	 * batch, but only the reads are batched: each changed property is still saved with its own call to the
+	 * administration service, so that it is authorized and validated, and its listeners are notified straight away
+	 * rather than once the transaction commits.
+	 * @param properties the map of property names to values
+	 * @return the number of properties which were changed or created
+	 * @throws APIException if an error occurs
+	 */
+	int setGlobalProperties(Map<String, String> properties) throws APIException;
+
 	/**
 	 * Uninstalls the given object
 	 * @param outgoing the outgoing object
@@ -0,0 +1,192 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import com.thoughtworks.xstream.converters.reflection.PureJavaReflectionProvider;
+import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.APIException;
+import org.openmrs.module.metadatadeploy.ObjectUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Accumulates a digest of the normalized content of the operations performed by a bundle, so that a bundle can be
+ * skipped if it would produce exactly the same content as the last time it was installed.
+ *
+ * Objects are normalized by their serializable fields. References to other objects are reduced to their UUIDs, and
+ * collections are sorted so that their iteration order doesn't matter. New objects within collections (e.g. concept
+ * names or program workflows) are normalized in full since they belong to the object which contains them.
+ */
+public class BundleFingerprint {
+
+	private static final PureJavaReflectionProvider reflector = new PureJavaReflectionProvider();
+
+	private MessageDigest digest;
+
+	/**
+	 * Creates a new empty fingerprint
+	 */
+	public BundleFingerprint() {
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new APIException("SHA-1 digest not available", ex);
+		}
+	}
+
+	/**
+	 * Adds an operation on an object to the fingerprint
+	 * @param operation the operation name
+	 * @param obj the object
+	 */
+	public void addObject(String operation, OpenmrsObject obj) {
+		StringBuilder sb = new StringBuilder();
+		appendObject(sb, obj, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+		addEntry(operation, sb.toString());
+	}
+
+	/**
+	 * Adds an operation with simple values to the fingerprint
+	 * @param operation the operation name
+	 * @param values the values
+	 */
+	public void addEntry(String operation, Object... values) {
+		StringBuilder sb = new StringBuilder(operation);
+		for (Object value : values) {
+			sb.append('|').append(value);
+		}
+		sb.append('\n');
+
+		try {
+			digest.update(sb.toString().getBytes("UTF-8"));
+		}
+		catch (UnsupportedEncodingException ex) {
+			throw new APIException("UTF-8 encoding not available", ex);
+		}
+	}
+
+	/**
+	 * Gets the digest of all operations added so far as a hex string
+	 * @return the digest
+	 */
+	public String getDigest() {
+		byte[] bytes = digest.digest();
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Appends the normalized content of an object
+	 * @param sb the string builder
+	 * @param obj the object
+	 * @param stack the objects currently being normalized, used to detect back references
+	 */
+	protected void appendObject(final StringBuilder sb, Object obj, final Set<Object> stack) {
+		stack.add(obj);
+		sb.append(obj.getClass().getName()).append('{');
+
+		reflector.visitSerializableFields(obj, new ReflectionProvider.Visitor() {
+			/**
+			 * @see ReflectionProvider#visitSerializableFields(Object, com.thoughtworks.xstream.converters.reflection.ReflectionProvider.Visitor)
+			 */
+			@Override
+			public void visit(String fieldName, Class type, Class definedIn, Object value) {
+				sb.append(fieldName).append('=');
+				appendValue(sb, value, stack);
+				sb.append(';');
+			}
+		});
+
+		sb.append('}');
+		stack.remove(obj);
+	}
+
+	/**
+	 * Appends the normalized form of a field value
+	 * @param sb the string builder
+	 * @param value the value
+	 * @param stack the objects currently being normalized
+	 */
+	protected void appendValue(StringBuilder sb, Object value, Set<Object> stack) {
+		if (value == null) {
+			sb.append("null");
+		}
+		else if (stack.contains(value)) {
+			sb.append('^');
+		}
+		else if (value instanceof OpenmrsObject) {
+			sb.append("ref:").append(((OpenmrsObject) value).getUuid());
+		}
+		else if (value instanceof Collection) {
+			List<String> items = new ArrayList<String>();
+			for (Object item : (Collection) value) {
+				StringBuilder itemSb = new StringBuilder();
+				if (item instanceof OpenmrsObject && isNew((OpenmrsObject) item) && !stack.contains(item)) {
+					appendObject(itemSb, item, stack);
+				}
+				else {
+					appendValue(itemSb, item, stack);
+				}
+				items.add(itemSb.toString());
+			}
+			Collections.sort(items);
+			sb.append(items);
+		}
+		else if (value instanceof Map) {
+			List<String> entries = new ArrayList<String>();
+			for (Object entry : ((Map) value).entrySet()) {
+				Map.Entry mapEntry = (Map.Entry) entry;
+				StringBuilder entrySb = new StringBuilder();
+				appendValue(entrySb, mapEntry.getKey(), stack);
+				entrySb.append(':');
+				appendValue(entrySb, mapEntry.getValue(), stack);
+				entries.add(entrySb.toString());
+			}
+			Collections.sort(entries);
+			sb.append(entries);
+		}
+		else if (value instanceof Date) {
+			sb.append(((Date) value).getTime());
+		}
+		else {
+			sb.append(value);
+		}
+	}
+
+	/**
+	 * Checks whether an object hasn't been saved yet. Objects which don't use ids (e.g. roles and privileges) are
+	 * always treated as references.
+	 * @param obj the object
+	 * @return true if object is new
+	 */
+	protected static boolean isNew(OpenmrsObject obj) {
+		return ObjectUtils.usesId(obj) && obj.getId() == null;
+	}
+}
@@ -0,0 +1,435 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+import org.springframework.util.ClassUtils;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the time taken to install each bundle and to run each install lane, the hits and misses of the lookup cache,
+ * and for each handler the latencies of the handler operations and the number of objects created, updated, left
+ * unchanged and uninstalled. Metrics are cumulative until reset, and are exposed over JMX as {@link #OBJECT_NAME}.
+ */
+public class DeployMetrics implements DeployMetricsMBean {
+
+	protected static final Log log = LogFactory.getLog(DeployMetrics.class);
+
+	/**
+	 * Name under which the shared instance is registered with the platform MBean server
+	 */
+	public static final String OBJECT_NAME = "org.openmrs.module.metadatadeploy:type=DeployMetrics";
+
+	private static final DeployMetrics instance = new DeployMetrics();
+
+	/**
+	 * Handler operations which are timed
+	 */
+	public enum Operation {
+		FETCH, FETCH_ALL, FIND_ALTERNATE_MATCH, DIFFERS, OVERWRITE, SAVE, UNINSTALL
+	}
+
+	/**
+	 * Outcomes of installing or uninstalling an object
+	 */
+	public enum Outcome {
+		CREATED, UPDATED, UNCHANGED, UNINSTALLED
+	}
+
+	private final ConcurrentMap<String, Long> bundleTimes = new ConcurrentHashMap<String, Long>();
+
+	private final AtomicLong bundlesInstalled = new AtomicLong();
+
+	private final AtomicLong bundleTimeMillis = new AtomicLong();
+
+	private final ConcurrentMap<String, Long> laneTimes = new ConcurrentHashMap<String, Long>();
+
+	private final AtomicLong lookupCacheHits = new AtomicLong();
+
+	private final AtomicLong lookupCacheMisses = new AtomicLong();
+
+	private final ConcurrentMap<String, HandlerMetrics> handlers = new ConcurrentHashMap<String, HandlerMetrics>();
+
+	/**
+	 * Gets the shared instance
+	 * @return the instance
+	 */
+	public static DeployMetrics getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Registers the shared instance with the platform MBean server, unless it is already registered
+	 */
+	public static void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(instance, name);
+			}
+		}
+		catch (Exception ex) {
+			log.warn("Unable to register deploy metrics MBean", ex);
+		}
+	}
+
+	/**
+	 * Unregisters the shared instance from the platform MBean server
+	 */
+	public static void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		}
+		catch (Exception ex) {
+			log.warn("Unable to unregister deploy metrics MBean", ex);
+		}
+	}
+
+	/**
+	 * Records the time taken to install a bundle
+	 * @param bundle the bundle
+	 * @param millis the time in milliseconds
+	 */
+	public void recordBundle(MetadataBundle bundle, long millis) {
+		// Keyed by full class name as bundles in different modules can have the same simple name
+		bundleTimes.put(ClassUtils.getUserClass(bundle).getName(), millis);
+		bundlesInstalled.incrementAndGet();
+		bundleTimeMillis.addAndGet(millis);
+	}
+
+	/**
+	 * Records the time taken to run an install lane
+	 * @param name the lane name
+	 * @param millis the time in milliseconds
+	 */
+	public void recordLane(String name, long millis) {
+		laneTimes.put(name, millis);
+	}
+
+	/**
+	 * Records a lookup of a cached type
+	 * @param hit true if the object was resolved from the lookup cache
+	 */
+	public void recordLookup(boolean hit) {
+		if (hit) {
+			lookupCacheHits.incrementAndGet();
+		}
+		else {
+			lookupCacheMisses.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Records the latency of a handler operation which has just finished
+	 * @param handler the handler
+	 * @param operation the operation
+	 * @param startNanos the value of {@link System#nanoTime()} when the operation started
+	 */
+	public void recordOperation(ObjectDeployHandler<?> handler, Operation operation, long startNanos) {
+		getHandlerMetrics(handler).getLatency(operation).record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records the outcome of installing or uninstalling an object
+	 * @param handler the handler
+	 * @param outcome the outcome
+	 */
+	public void recordOutcome(ObjectDeployHandler<?> handler, Outcome outcome) {
+		getHandlerMetrics(handler).getCounter(outcome).incrementAndGet();
+	}
+
+	/**
+	 * Gets the metrics of a handler, creating them if necessary
+	 * @param handler the handler
+	 * @return the handler metrics
+	 */
+	public HandlerMetrics getHandlerMetrics(ObjectDeployHandler<?> handler) {
+		// Keyed by full class name as handlers in different modules can have the same simple name
+		String name = ClassUtils.getUserClass(handler).getName();
+		HandlerMetrics metrics = handlers.get(name);
+		if (metrics == null) {
+			HandlerMetrics created = new HandlerMetrics(name);
+			metrics = handlers.putIfAbsent(name, created);
+			if (metrics == null) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getBundlesInstalled()
+	 */
+	@Override
+	public long getBundlesInstalled() {
+		return bundlesInstalled.get();
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getBundleTimeMillis()
+	 */
+	@Override
+	public long getBundleTimeMillis() {
+		return bundleTimeMillis.get();
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getObjectsCreated()
+	 */
+	@Override
+	public long getObjectsCreated() {
+		return getTotal(Outcome.CREATED);
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getObjectsUpdated()
+	 */
+	@Override
+	public long getObjectsUpdated() {
+		return getTotal(Outcome.UPDATED);
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getObjectsUnchanged()
+	 */
+	@Override
+	public long getObjectsUnchanged() {
+		return getTotal(Outcome.UNCHANGED);
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getObjectsUninstalled()
+	 */
+	@Override
+	public long getObjectsUninstalled() {
+		return getTotal(Outcome.UNINSTALLED);
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getLookupCacheHits()
+	 */
+	@Override
+	public long getLookupCacheHits() {
+		return lookupCacheHits.get();
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getLookupCacheMisses()
+	 */
+	@Override
+	public long getLookupCacheMisses() {
+		return lookupCacheMisses.get();
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getBundleTimes()
+	 */
+	@Override
+	public String[] getBundleTimes() {
+		return formatTimes(bundleTimes);
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getLaneTimes()
+	 */
+	@Override
+	public String[] getLaneTimes() {
+		return formatTimes(laneTimes);
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getHandlerStatistics()
+	 */
+	@Override
+	public String[] getHandlerStatistics() {
+		List<HandlerMetrics> sorted = new ArrayList<HandlerMetrics>(handlers.values());
+		Collections.sort(sorted, new Comparator<HandlerMetrics>() {
+			@Override
+			public int compare(HandlerMetrics metrics1, HandlerMetrics metrics2) {
+				return Long.valueOf(metrics2.getTotalMillis()).compareTo(metrics1.getTotalMillis());
+			}
+		});
+
+		String[] statistics = new String[sorted.size()];
+		for (int h = 0; h < sorted.size(); ++h) {
+			statistics[h] = sorted.get(h).toString();
+		}
+		return statistics;
+	}
+
+	/**
+	 * @see DeployMetricsMBean#getSummary()
+	 */
+	@Override
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Installed ").append(getBundlesInstalled()).append(" bundles in ").append(getBundleTimeMillis()).append("ms");
+		sb.append(" (created=").append(getObjectsCreated());
+		sb.append(" updated=").append(getObjectsUpdated());
+		sb.append(" unchanged=").append(getObjectsUnchanged());
+		sb.append(" uninstalled=").append(getObjectsUninstalled()).append(")");
+
+		if (getLookupCacheHits() > 0 || getLookupCacheMisses() > 0) {
+			sb.append("\n  lookup cache hits=").append(getLookupCacheHits()).append(" misses=").append(getLookupCacheMisses());
+		}
+
+		for (String bundleTime : getBundleTimes()) {
+			sb.append("\n  bundle ").append(bundleTime);
+		}
+		for (String laneTime : getLaneTimes()) {
+			sb.append("\n  lane ").append(laneTime);
+		}
+		for (String handlerStatistics : getHandlerStatistics()) {
+			sb.append("\n  handler ").append(handlerStatistics);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @see DeployMetricsMBean#reset()
+	 */
+	@Override
+	public void reset() {
+		bundleTimes.clear();
+		laneTimes.clear();
+		bundlesInstalled.set(0);
+		bundleTimeMillis.set(0);
+		lookupCacheHits.set(0);
+		lookupCacheMisses.set(0);
+		handlers.clear();
+	}
+
+	/**
+	 * Formats a map of names to times, slowest first
+	 * @param times the times
+	 * @return the formatted times
+	 */
+	private static String[] formatTimes(Map<String, Long> times) {
+		List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(times.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+			@Override
+			public int compare(Map.Entry<String, Long> entry1, Map.Entry<String, Long> entry2) {
+				return entry2.getValue().compareTo(entry1.getValue());
+			}
+		});
+
+		String[] formatted = new String[entries.size()];
+		for (int e = 0; e < entries.size(); ++e) {
+			formatted[e] = entries.get(e).getKey() + ": " + entries.get(e).getValue() + "ms";
+		}
+		return formatted;
+	}
+
+	private long getTotal(Outcome outcome) {
+		long total = 0;
+		for (HandlerMetrics metrics : handlers.values()) {
+			total += metrics.getCount(outcome);
+		}
+		return total;
+	}
+
+	/**
+	 * Metrics of a single handler
+	 */
+	public static class HandlerMetrics {
+
+		private final String name;
+
+		private final Map<Operation, LatencyHistogram> latencies = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+
+		private final Map<Outcome, AtomicLong> counters = new EnumMap<Outcome, AtomicLong>(Outcome.class);
+
+		public HandlerMetrics(String name) {
+			this.name = name;
+
+			// Maps are fully populated here and never modified, so can be read by any thread
+			for (Operation operation : Operation.values()) {
+				latencies.put(operation, new LatencyHistogram());
+			}
+			for (Outcome outcome : Outcome.values()) {
+				counters.put(outcome, new AtomicLong());
+			}
+		}
+
+		/**
+		 * Gets the latencies of an operation
+		 * @param operation the operation
+		 * @return the latency histogram
+		 */
+		public LatencyHistogram getLatency(Operation operation) {
+			return latencies.get(operation);
+		}
+
+		/**
+		 * Gets the number of objects with the given outcome
+		 * @param outcome the outcome
+		 * @return the number of objects
+		 */
+		public long getCount(Outcome outcome) {
+			return counters.get(outcome).get();
+		}
+
+		/**
+		 * Gets the total time of all operations
+		 * @return the time in milliseconds
+		 */
+		public long getTotalMillis() {
+			long total = 0;
+			for (LatencyHistogram latency : latencies.values()) {
+				total += latency.getTotalMillis();
+			}
+			return total;
+		}
+
+		protected AtomicLong getCounter(Outcome outcome) {
+			return counters.get(outcome);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(name);
+			for (Outcome outcome : Outcome.values()) {
+				sb.append(' ').append(outcome.name().toLowerCase()).append('=').append(getCount(outcome));
+			}
+			for (Operation operation : Operation.values()) {
+				LatencyHistogram latency = latencies.get(operation);
+				if (latency.getCount() > 0) {
+					sb.append(' ').append(operation.name().toLowerCase()).append("[").append(latency).append("]");
+				}
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+/**
+ * JMX management interface of {@link DeployMetrics}
+ */
+public interface DeployMetricsMBean {
+
+	/**
+	 * Gets the number of bundle installs which have been timed
+	 * @return the number of bundles
+	 */
+	long getBundlesInstalled();
+
+	/**
+	 * Gets the total time spent installing bundles
+	 * @return the time in milliseconds
+	 */
+	long getBundleTimeMillis();
+
+	/**
+	 * Gets the number of objects which were created
+	 * @return the number of objects
+	 */
+	long getObjectsCreated();
+
+	/**
+	 * Gets the number of existing objects which were updated
+	 * @return the number of objects
+	 */
+	long getObjectsUpdated();
+
+	/**
+	 * Gets the number of existing objects which were already up to date
+	 * @return the number of objects
+	 */
+	long getObjectsUnchanged();
+
+	/**
+	 * Gets the number of objects which were uninstalled
+	 * @return the number of objects
+	 */
+	long getObjectsUninstalled();
+
+	/**
+	 * Gets the number of lookups which were resolved from the lookup cache
+	 * @return the number of hits
+	 */
+	long getLookupCacheHits();
+
+	/**
+	 * Gets the number of lookups of cached types which had to be fetched
+	 * @return the number of misses
+	 */
+	long getLookupCacheMisses();
+
+	/**
+	 * Gets the last install time of each bundle by class name, slowest first
+	 * @return the bundle times
+	 */
+	String[] getBundleTimes();
+
+	/**
+	 * Gets the last run time of each install lane, slowest first
+	 * @return the lane times
+	 */
+	String[] getLaneTimes();
+
+	/**
+	 * Gets the object counts and operation latencies of each handler, slowest first
+	 * @return the handler statistics
+	 */
+	String[] getHandlerStatistics();
+
+	/**
+	 * Gets a summary of all metrics
+	 * @return the summary
+	 */
+	String getSummary();
+
+	/**
+	 * Discards all recorded metrics
+	 */
+	void reset();
+}
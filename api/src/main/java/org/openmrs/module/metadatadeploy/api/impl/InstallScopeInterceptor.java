@@ -0,0 +1,102 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.type.Type;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.metadatadeploy.handler.InstallScope;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandlers;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+
+/**
+ * Hibernate interceptor which keeps the alternate match indexes of the current thread's install scope up to date with
+ * objects which are saved, changed or deleted without going through the deploy service, e.g. directly through the
+ * OpenMRS services. OpenMRS adds all interceptor beans to it's session factory.
+ */
+@Component("metadataDeployInstallScopeInterceptor")
+public class InstallScopeInterceptor extends EmptyInterceptor implements ApplicationContextAware {
+
+	private transient ApplicationContext applicationContext;
+
+	private transient volatile ObjectDeployHandlers handlers;
+
+	/**
+	 * @see ApplicationContextAware#setApplicationContext(org.springframework.context.ApplicationContext)
+	 */
+	@Override
+	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+		this.applicationContext = applicationContext;
+	}
+
+	/**
+	 * @see EmptyInterceptor#onSave(Object, java.io.Serializable, Object[], String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		ObjectDeployHandler<OpenmrsObject> handler = getIndexableHandler(entity);
+		if (handler != null) {
+			InstallScope.current().indexChanged(handler, (OpenmrsObject) entity);
+		}
+		return false;
+	}
+
+	/**
+	 * @see EmptyInterceptor#onFlushDirty(Object, java.io.Serializable, Object[], Object[], String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState, String[] propertyNames, Type[] types) {
+		ObjectDeployHandler<OpenmrsObject> handler = getIndexableHandler(entity);
+		if (handler != null) {
+			InstallScope.current().indexChanged(handler, (OpenmrsObject) entity);
+		}
+		return false;
+	}
+
+	/**
+	 * @see EmptyInterceptor#onDelete(Object, java.io.Serializable, Object[], String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public void onDelete(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		ObjectDeployHandler<OpenmrsObject> handler = getIndexableHandler(entity);
+		if (handler != null) {
+			InstallScope.current().invalidateIndex(handler);
+		}
+	}
+
+	/**
+	 * Gets the handler of an entity if it could be in an index of the current thread's install scope
+	 * @param entity the entity
+	 * @return the handler or null if there is no open scope or the entity has no handler
+	 */
+	protected ObjectDeployHandler<OpenmrsObject> getIndexableHandler(Object entity) {
+		// Objects saved whilst recording belong to the recording transaction, which is always rolled back
+		if (!(entity instanceof OpenmrsObject) || InstallScope.current() == null || MetadataDeployServiceImpl.isRecording()) {
+			return null;
+		}
+
+		// Handlers are looked up when first needed, as they depend on services which depend on the session factory
+		if (handlers == null) {
+			handlers = applicationContext.getBean(ObjectDeployHandlers.class);
+		}
+		return handlers.getHandler((Class<? extends OpenmrsObject>) entity.getClass());
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.module.metadatadeploy.SessionTask;
+import org.openmrs.module.metadatadeploy.bundle.InstallLane;
+import org.openmrs.module.metadatadeploy.handler.InstallScope;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the independent lanes of a bundle on a bounded pool of worker threads, and waits for all of them to finish.
+ * Each lane is run in it's own Hibernate session and transaction.
+ */
+public class LaneInstaller {
+
+	protected static final Log log = LogFactory.getLog(LaneInstaller.class);
+
+	private final MetadataDeployServiceImpl deployService;
+
+	private final PlatformTransactionManager transactionManager;
+
+	private final int threads;
+
+	/**
+	 * Creates a new installer
+	 * @param deployService the deploy service
+	 * @param transactionManager the transaction manager
+	 * @param threads the maximum number of lanes to run at the same time
+	 */
+	public LaneInstaller(MetadataDeployServiceImpl deployService, PlatformTransactionManager transactionManager, int threads) {
+		this.deployService = deployService;
+		this.transactionManager = transactionManager;
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs all of the given lanes. If any lane fails, the first failure is thrown once all lanes have finished.
+	 * @param lanes the lanes
+	 * @throws APIException if an error occurs
+	 */
+	public void install(List<InstallLane> lanes) throws APIException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new LaneThreadFactory());
+		List<Future<InstallLane>> futures = new ArrayList<Future<InstallLane>>();
+
+		for (InstallLane lane : lanes) {
+			futures.add(executor.submit(new LaneTask(lane)));
+		}
+
+		Throwable failure = null;
+
+		try {
+			for (Future<InstallLane> future : futures) {
+				try {
+					future.get();
+				}
+				catch (ExecutionException ex) {
+					if (failure == null) {
+						failure = ex.getCause();
+					}
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new APIException("Interrupted whilst installing lanes", ex);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		if (failure instanceof APIException) {
+			throw (APIException) failure;
+		}
+		else if (failure != null) {
+			throw new APIException("Unable to install lanes", failure);
+		}
+	}
+
+	/**
+	 * Task which runs a single lane in a new session and transaction
+	 */
+	protected class LaneTask extends SessionTask<InstallLane> {
+
+		private final InstallLane lane;
+
+		public LaneTask(InstallLane lane) {
+			super(transactionManager);
+			this.lane = lane;
+		}
+
+		@Override
+		protected InstallLane doInSession() throws Exception {
+			// Each worker has it's own session so can't share cached objects with other workers
+			InstallScope scope = InstallScope.open();
+			try {
+				deployService.runLane(lane);
+				return lane;
+			}
+			finally {
+				deployService.closeScope(scope);
+			}
+		}
+	}
+
+	/**
+	 * Creates named daemon threads so that lane workers can be identified in thread dumps
+	 */
+	protected static class LaneThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "metadatadeploy-lane-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
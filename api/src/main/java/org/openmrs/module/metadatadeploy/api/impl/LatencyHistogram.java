@@ -0,0 +1,118 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of operation latencies. Latencies are counted in buckets whose upper bounds are powers of two
+ * microseconds, so percentiles are approximate but recording is cheap and never allocates.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 32;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Records a latency
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(nanos / 1000, 0);
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+
+		buckets.incrementAndGet(bucket);
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * Gets the number of recorded latencies
+	 * @return the count
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Gets the total of all recorded latencies
+	 * @return the total in milliseconds
+	 */
+	public long getTotalMillis() {
+		return totalNanos.get() / 1000000;
+	}
+
+	/**
+	 * Gets the mean of all recorded latencies
+	 * @return the mean in microseconds
+	 */
+	public long getMeanMicros() {
+		long n = count.get();
+		return n > 0 ? totalNanos.get() / n / 1000 : 0;
+	}
+
+	/**
+	 * Gets the largest recorded latency
+	 * @return the maximum in microseconds
+	 */
+	public long getMaxMicros() {
+		return maxNanos.get() / 1000;
+	}
+
+	/**
+	 * Gets an upper bound of the given percentile of recorded latencies
+	 * @param percentile the percentile (e.g. 95)
+	 * @return the upper bound in microseconds
+	 */
+	public long getPercentileMicros(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+
+		long threshold = (long) Math.ceil(n * percentile / 100);
+		long cumulative = 0;
+		for (int b = 0; b < BUCKETS; ++b) {
+			cumulative += buckets.get(b);
+			if (cumulative >= threshold) {
+				return Math.min(b > 0 ? (1L << b) - 1 : 0, getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+
+	/**
+	 * Gets a short description of the recorded latencies
+	 * @return the description
+	 */
+	@Override
+	public String toString() {
+		return "n=" + getCount() + " total=" + getTotalMillis() + "ms mean=" + getMeanMicros() + "us p95<="
+				+ getPercentileMicros(95) + "us max=" + getMaxMicros() + "us";
+	}
+}
@@ -16,15 +16,30 @@ package org.openmrs.module.metadatadeploy.api.impl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openmrs.GlobalProperty;
 import org.openmrs.OpenmrsObject;
 import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.metadatadeploy.ResourceUtils;
 import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
+import org.openmrs.module.metadatadeploy.bundle.BundleGraph;
+import org.openmrs.module.metadatadeploy.bundle.InstallLane;
 import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
-import org.openmrs.module.metadatadeploy.bundle.Requires;
+import org.openmrs.module.metadatadeploy.bundle.PackageBundle;
+import org.openmrs.module.metadatadeploy.bundle.PackageDescriptor;
+import org.openmrs.module.metadatadeploy.bundle.VersionedMetadataBundle;
+import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.InstallScope;
 import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
 import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandlers;
+import org.openmrs.module.metadatadeploy.handler.impl.GlobalPropertyDeployHandler;
+import org.openmrs.module.metadatadeploy.source.AbstractCsvResourceSource;
+import org.openmrs.module.metadatadeploy.source.InstallCallback;
 import org.openmrs.module.metadatadeploy.source.ObjectSource;
 import org.openmrs.module.metadatasharing.ImportConfig;
 import org.openmrs.module.metadatasharing.ImportMode;
@@ -32,14 +47,24 @@ import org.openmrs.module.metadatasharing.ImportedPackage;
 import org.openmrs.module.metadatasharing.MetadataSharing;
 import org.openmrs.module.metadatasharing.api.MetadataSharingService;
 import org.openmrs.module.metadatasharing.wrapper.PackageImporter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,8 +75,231 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 
 	protected static final Log log = LogFactory.getLog(MetadataDeployServiceImpl.class);
 
-    
-    
+	/**
+	 * System property for the number of bundles which can be installed at the same time
+	 */
+	public static final String SYSTEM_PROPERTY_INSTALL_THREADS = "metadataDeployInstallThreads";
+
+	/**
+	 * System property to enable skipping of bundles whose content hasn't changed since they were last installed
+	 */
+	public static final String SYSTEM_PROPERTY_SKIP_UNCHANGED_BUNDLES = "metadataDeploySkipUnchangedBundles";
+
+	/**
+	 * System property for the number of metadata packages which can be preloaded at the same time
+	 */
+	public static final String SYSTEM_PROPERTY_PACKAGE_PRELOAD_THREADS = "metadataDeployPackagePreloadThreads";
+
+	/**
+	 * System property to enable logging of the deploy metrics summary at info level after bundles are installed
+	 */
+	public static final String SYSTEM_PROPERTY_LOG_METRICS = "metadataDeployLogMetrics";
+
+	/**
+	 * System property for the comma separated class names of objects which should be kept in the lookup cache
+	 */
+	public static final String SYSTEM_PROPERTY_LOOKUP_CACHE_TYPES = "metadataDeployLookupCacheTypes";
+
+	/**
+	 * System property for the maximum number of primary keys in the lookup cache
+	 */
+	public static final String SYSTEM_PROPERTY_LOOKUP_CACHE_SIZE = "metadataDeployLookupCacheSize";
+
+	/**
+	 * System property for the number of seconds after which primary keys in the lookup cache expire
+	 */
+	public static final String SYSTEM_PROPERTY_LOOKUP_CACHE_TTL = "metadataDeployLookupCacheTtl";
+
+	/**
+	 * Prefix of the global properties which store the content digest of each installed bundle
+	 */
+	public static final String GP_BUNDLE_DIGEST_PREFIX = "metadatadeploy.bundle.digest.";
+
+	/**
+	 * Prefix of the global properties which store the content checksum of each installed package, by package group
+	 */
+	public static final String GP_PACKAGE_CHECKSUM_PREFIX = "metadatadeploy.package.checksum.";
+
+	// Fingerprint being recorded by the current thread, during which operations are recorded rather than performed
+	private static final ThreadLocal<BundleFingerprint> recording = new ThreadLocal<BundleFingerprint>();
+
+	// Whether the bundle being installed by the current thread has written anything yet, or null outside of bundles
+	private static final ThreadLocal<Boolean> bundleWritten = new ThreadLocal<Boolean>();
+
+	private PlatformTransactionManager transactionManager;
+
+	private SessionFactory sessionFactory;
+
+	private Integer installThreads;
+
+	private Boolean skipUnchangedBundles;
+
+	private Integer packagePreloadThreads;
+
+	private volatile PackagePreloader packagePreloader;
+
+	private volatile MetadataLookupCache lookupCache;
+
+	private volatile DeployMetrics metrics;
+
+	private volatile ObjectDeployHandlers objectDeployHandlers;
+
+	/**
+	 * Sets the transaction manager used to give each parallel installed bundle it's own transaction
+	 * @param transactionManager the transaction manager
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	/**
+	 * Sets the session factory used to check whether bundles changed anything whilst being fingerprinted, and to resolve
+	 * objects from the lookup cache
+	 * @param sessionFactory the session factory
+	 */
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	/**
+	 * Sets the number of bundles which can be installed at the same time. If not set, this is read from the
+	 * {@link #SYSTEM_PROPERTY_INSTALL_THREADS} system property, and defaults to 1 (i.e. serial installation).
+	 * @param installThreads the number of threads
+	 */
+	public void setInstallThreads(Integer installThreads) {
+		this.installThreads = installThreads;
+	}
+
+	/**
+	 * Gets the number of bundles which can be installed at the same time
+	 * @return the number of threads
+	 */
+	public int getInstallThreads() {
+		if (installThreads != null) {
+			return installThreads;
+		}
+
+		return getIntegerSystemProperty(SYSTEM_PROPERTY_INSTALL_THREADS, 1);
+	}
+
+	/**
+	 * Sets whether bundles whose content hasn't changed since they were last installed should be skipped. If not set,
+	 * this is read from the {@link #SYSTEM_PROPERTY_SKIP_UNCHANGED_BUNDLES} system property, and defaults to false.
+	 * @param skipUnchangedBundles true to skip unchanged bundles
+	 */
+	public void setSkipUnchangedBundles(Boolean skipUnchangedBundles) {
+		this.skipUnchangedBundles = skipUnchangedBundles;
+	}
+
+	/**
+	 * Gets whether bundles whose content hasn't changed since they were last installed should be skipped
+	 * @return true to skip unchanged bundles
+	 */
+	public boolean isSkipUnchangedBundles() {
+		if (skipUnchangedBundles != null) {
+			return skipUnchangedBundles;
+		}
+		return Boolean.parseBoolean(System.getProperty(SYSTEM_PROPERTY_SKIP_UNCHANGED_BUNDLES, "false"));
+	}
+
+	/**
+	 * Sets the number of metadata packages which can be preloaded at the same time. If not set, this is read from the
+	 * {@link #SYSTEM_PROPERTY_PACKAGE_PRELOAD_THREADS} system property, and defaults to 0 (i.e. no preloading).
+	 * @param packagePreloadThreads the number of threads
+	 */
+	public void setPackagePreloadThreads(Integer packagePreloadThreads) {
+		this.packagePreloadThreads = packagePreloadThreads;
+	}
+
+	/**
+	 * Gets the number of metadata packages which can be preloaded at the same time
+	 * @return the number of threads
+	 */
+	public int getPackagePreloadThreads() {
+		if (packagePreloadThreads != null) {
+			return packagePreloadThreads;
+		}
+
+		return getIntegerSystemProperty(SYSTEM_PROPERTY_PACKAGE_PRELOAD_THREADS, 0);
+	}
+
+	/**
+	 * Sets the cache used by {@link #fetchObject(Class, String)} outside of bundle installs. If not set, this is
+	 * created from the {@link #SYSTEM_PROPERTY_LOOKUP_CACHE_TYPES}, {@link #SYSTEM_PROPERTY_LOOKUP_CACHE_SIZE} and
+	 * {@link #SYSTEM_PROPERTY_LOOKUP_CACHE_TTL} system properties, and by default caches nothing.
+	 * @param lookupCache the lookup cache
+	 */
+	public void setLookupCache(MetadataLookupCache lookupCache) {
+		this.lookupCache = lookupCache;
+	}
+
+	/**
+	 * Gets the cache used by {@link #fetchObject(Class, String)} outside of bundle installs
+	 * @return the lookup cache
+	 */
+	public MetadataLookupCache getLookupCache() {
+		MetadataLookupCache cache = lookupCache;
+		if (cache == null) {
+			List<Class<?>> types = new ArrayList<Class<?>>();
+			for (String className : System.getProperty(SYSTEM_PROPERTY_LOOKUP_CACHE_TYPES, "").split(",")) {
+				if (className.trim().length() > 0) {
+					try {
+						types.add(Context.loadClass(className.trim()));
+					}
+					catch (ClassNotFoundException ex) {
+						log.warn("Ignoring invalid class in " + SYSTEM_PROPERTY_LOOKUP_CACHE_TYPES + ": " + className);
+					}
+				}
+			}
+
+			int maxSize = getIntegerSystemProperty(SYSTEM_PROPERTY_LOOKUP_CACHE_SIZE, 1000);
+			int timeToLive = getIntegerSystemProperty(SYSTEM_PROPERTY_LOOKUP_CACHE_TTL, 300);
+
+			cache = new MetadataLookupCache(types, maxSize, timeToLive * 1000L);
+			lookupCache = cache;
+		}
+		return cache;
+	}
+
+	/**
+	 * Sets the metrics which record bundle install times and handler operations. If not set, the shared instance which
+	 * is registered with JMX is used.
+	 * @param metrics the metrics
+	 */
+	public void setMetrics(DeployMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Gets the metrics which record bundle install times and handler operations
+	 * @return the metrics
+	 */
+	public DeployMetrics getMetrics() {
+		DeployMetrics current = metrics;
+		return current != null ? current : DeployMetrics.getInstance();
+	}
+
+	/**
+	 * Gets an integer system property
+	 * @param name the property name
+	 * @param defaultValue the value if property isn't set or isn't valid
+	 * @return the value
+	 */
+	protected static int getIntegerSystemProperty(String name, int defaultValue) {
+		String systemProperty = System.getProperty(name);
+		if (systemProperty == null) {
+			return defaultValue;
+		}
+
+		try {
+			return Integer.parseInt(systemProperty.trim());
+		}
+		catch (NumberFormatException ex) {
+			log.warn("Ignoring invalid value for " + name + ": " + systemProperty);
+			return defaultValue;
+		}
+	}
+
 	/**
 	 * @see MetadataDeployService#installBundles(java.util.Collection)
 	 */
@@ -63,11 +311,7 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 			all.put(bundle.getClass(), bundle);
 		}
 
-		// Begin recursive processing
-		Set<MetadataBundle> installed = new HashSet<MetadataBundle>();
-		for (MetadataBundle bundle : bundles) {
-			installBundle(bundle, all, installed);
-		}
+		installBundles(new BundleGraph(bundles, all));
 	}
 
     public void installBundle(MetadataBundle bundle) throws APIException {
@@ -77,80 +321,445 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
             all.put(b.getClass(), b);
         }
 
-        Set<MetadataBundle> installed = new HashSet<MetadataBundle>();
-        installBundle(bundle, all, installed);
+        installBundles(new BundleGraph(Collections.singleton(bundle), all));
     }
 
-    /**
-	 * Installs a metadata bundle by recursively installing it's required bundles
-	 * @param bundle the bundle
-	 * @param all the map of all bundles and their ids
-	 * @param installed the set of previously installed bundles
+	/**
+	 * Installs all bundles in a bundle graph. Bundles are installed in parallel if more than one install thread is
+	 * configured, otherwise they are installed one after another in the current transaction. If package preloading is
+	 * enabled, packages declared by bundles are loaded in the background while bundles are installed.
+	 * @param graph the bundle graph
 	 */
-	protected void installBundle(MetadataBundle bundle, Map<Class<? extends MetadataBundle>, MetadataBundle> all, Set<MetadataBundle> installed) throws APIException {
-		// Return immediately if bundle has already been installed
-		if (installed.contains(bundle)) {
-			return;
-		}
+	protected void installBundles(BundleGraph graph) throws APIException {
+		int threads = Math.min(getInstallThreads(), graph.size());
 
+		PackagePreloader preloader = startPreloading(graph);
 		try {
-			// Install required bundles first
-			Requires requires = bundle.getClass().getAnnotation(Requires.class);
-			if (requires != null) {
-				for (Class<? extends MetadataBundle> requiredClass : requires.value()) {
-					MetadataBundle required = all.get(requiredClass);
-
-					if (required == null) {
-						throw new RuntimeException("Can't find required bundle class " + requiredClass + " for " + bundle.getClass());
-					}
+			if (threads > 1 && transactionManager != null) {
+				log.info("Installing " + graph.size() + " bundles using " + threads + " threads");
 
-					installBundle(required, all, installed);
+				new ParallelBundleInstaller(this, transactionManager, threads).install(graph);
+			}
+			else {
+				InstallScope scope = InstallScope.open();
+				try {
+					for (MetadataBundle bundle : graph.getInstallOrder()) {
+						installBundleContent(bundle);
+					}
 				}
+				finally {
+					closeScope(scope);
+				}
+			}
+		}
+		finally {
+			if (preloader != null) {
+				stopPreloading(preloader);
 			}
+		}
+
+		// Metrics are cumulative across calls, so are only logged at info level if enabled and are otherwise read over JMX
+		if (Boolean.parseBoolean(System.getProperty(SYSTEM_PROPERTY_LOG_METRICS, "false"))) {
+			log.info("Metadata deploy metrics: " + getMetrics().getSummary());
+		}
+		else if (log.isDebugEnabled()) {
+			log.debug("Metadata deploy metrics: " + getMetrics().getSummary());
+		}
+	}
+
+	/**
+	 * Closes an install scope, logging it's cache statistics if it has ended
+	 * @param scope the scope
+	 */
+	protected void closeScope(InstallScope scope) {
+		if (scope.close() && log.isDebugEnabled()) {
+			log.debug("Install scope ended with " + scope.getHits() + " cache hits and " + scope.getMisses() + " misses");
+		}
+	}
 
+	/**
+	 * Installs the content of a single bundle. Required bundles must have already been installed. If skipping of
+	 * unchanged bundles is enabled, the bundle is skipped if it's content digest matches the digest stored when it was
+	 * last installed.
+	 * @param bundle the bundle
+	 */
+	protected void installBundleContent(MetadataBundle bundle) throws APIException {
+		long start = System.currentTimeMillis();
+
+		// Versioned bundles track their own changes and would record a new version during the fingerprint run
+		boolean useDigest = isSkipUnchangedBundles() && !(bundle instanceof VersionedMetadataBundle);
+
+		String digest = useDigest ? fingerprintBundle(bundle) : null;
+		String digestProperty = GP_BUNDLE_DIGEST_PREFIX + bundle.getClass().getName();
+
+		if (digest != null && digest.equals(Context.getAdministrationService().getGlobalProperty(digestProperty))) {
+			log.info("Skipping bundle " + bundle.getClass().getSimpleName() + " as it's content is unchanged");
+			getMetrics().recordBundle(bundle, System.currentTimeMillis() - start);
+			return;
+		}
+
+		bundleWritten.set(Boolean.FALSE);
+		try {
 			bundle.install();
-			installed.add(bundle);
 
 			Context.flushSession();
 		}
 		catch (Exception ex) {
 			throw new APIException("Unable to install bundle " + bundle.getClass().getSimpleName(), ex);
 		}
+		finally {
+			bundleWritten.remove();
+		}
+
+		if (digest != null) {
+			AdministrationService adminService = Context.getAdministrationService();
+			GlobalProperty gp = adminService.getGlobalPropertyObject(digestProperty);
+			if (gp == null) {
+				gp = new GlobalProperty(digestProperty, null, "Content digest of the last installed version of this bundle");
+			}
+			gp.setPropertyValue(digest);
+			adminService.saveGlobalProperty(gp);
+		}
+
+		getMetrics().recordBundle(bundle, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * @see MetadataDeployService#installLanes(java.util.List)
+	 */
+	@Override
+	public void installLanes(List<InstallLane> lanes) throws APIException {
+		// Lanes which commit in their own transactions could otherwise wait forever on locks held by the bundle's
+		// uncommitted changes, so the same rule applies however lanes are run
+		if (Boolean.TRUE.equals(bundleWritten.get()) || (sessionFactory != null && sessionFactory.getCurrentSession().isDirty())) {
+			throw new APIException("Lanes must be installed before their bundle installs or changes anything else");
+		}
+
+		int threads = Math.min(getInstallThreads(), lanes.size());
+
+		// Lanes are run serially when recording, as recording is per-thread, or when the current transaction wouldn't
+		// see the objects which lanes commit in their own transactions. They are also run serially on bundle install
+		// workers, as each worker would otherwise hold it's connection whilst it's lanes wait for more connections, so
+		// concurrent transactions are never more than the install threads
+		if (threads > 1 && transactionManager != null && recording.get() == null && isReadCommitted()
+				&& !ParallelBundleInstaller.isInstallingBundle()) {
+			log.debug("Installing " + lanes.size() + " lanes using " + threads + " threads");
+
+			new LaneInstaller(this, transactionManager, threads).install(lanes);
+
+			// Lanes commit objects in their own sessions, so indexes of this session's scope are no longer complete
+			InstallScope scope = InstallScope.current();
+			if (scope != null) {
+				scope.invalidateIndexes();
+			}
+		}
+		else {
+			Boolean written = bundleWritten.get();
+			try {
+				for (InstallLane lane : lanes) {
+					runLane(lane);
+				}
+
+				if (recording.get() == null) {
+					Context.flushSession();
+				}
+			}
+			finally {
+				// Serial lanes write in the bundle's transaction, but more lanes may follow as they would in parallel
+				if (written != null) {
+					bundleWritten.set(written);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs a single install lane on the current thread, recording the time it takes
+	 * @param lane the lane
+	 * @throws APIException if an error occurs
+	 */
+	protected void runLane(InstallLane lane) throws APIException {
+		long start = System.currentTimeMillis();
+
+		try {
+			lane.run();
+		}
+		catch (APIException ex) {
+			throw ex;
+		}
+		catch (Exception ex) {
+			throw new APIException("Unable to install lane " + lane.getName(), ex);
+		}
+
+		if (recording.get() == null) {
+			long time = System.currentTimeMillis() - start;
+			getMetrics().recordLane(lane.getName(), time);
+			log.info("Installed lane " + lane.getName() + " in " + time + "ms on " + Thread.currentThread().getName());
+		}
+	}
+
+	/**
+	 * Checks whether the current transaction can see objects committed by other transactions after it started
+	 * @return true if it can
+	 */
+	protected static boolean isReadCommitted() {
+		Integer isolationLevel = TransactionSynchronizationManager.getCurrentTransactionIsolationLevel();
+		return isolationLevel != null && isolationLevel <= TransactionDefinition.ISOLATION_READ_COMMITTED;
+	}
+
+	/**
+	 * Calculates the content digest of a bundle by running it's install method with all deploy operations being
+	 * recorded rather than performed. This is done in a separate read-only transaction which is always rolled back, so
+	 * that nothing the bundle does whilst being recorded can affect the current transaction. Bundles which can't be run
+	 * this way, e.g. because they fetch objects which they install themselves, or which change objects without going
+	 * through this service, have no digest and are always installed.
+	 * @param bundle the bundle
+	 * @return the digest or null if it couldn't be calculated
+	 */
+	protected String fingerprintBundle(final MetadataBundle bundle) {
+		if (transactionManager == null || sessionFactory == null) {
+			return null;
+		}
+
+		final BundleFingerprint fingerprint = new BundleFingerprint();
+
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		transactionTemplate.setReadOnly(true);
+
+		recording.set(fingerprint);
+		try {
+			return transactionTemplate.execute(new TransactionCallback<String>() {
+				@Override
+				public String doInTransaction(TransactionStatus status) {
+					status.setRollbackOnly();
+
+					try {
+						bundle.install();
+					}
+					catch (Exception ex) {
+						log.debug("Unable to calculate content digest of bundle " + bundle.getClass().getSimpleName(), ex);
+						return null;
+					}
+
+					if (sessionFactory.getCurrentSession().isDirty()) {
+						log.debug("Bundle " + bundle.getClass().getSimpleName() + " changes objects directly so has no content digest");
+						return null;
+					}
+					return fingerprint.getDigest();
+				}
+			});
+		}
+		catch (Exception ex) {
+			log.debug("Unable to calculate content digest of bundle " + bundle.getClass().getSimpleName(), ex);
+			return null;
+		}
+		finally {
+			recording.remove();
+		}
 	}
 
 	/**
 	 * @see MetadataDeployService#installPackage(String, ClassLoader, String)
 	 */
 	public boolean installPackage(String filename, ClassLoader loader, String groupUuid, ImportMode importMode) throws APIException {
-		Matcher matcher = Pattern.compile("[\\w/-]+-(\\d+).zip").matcher(filename);
-		if (!matcher.matches()) {
-			throw new APIException("Filename must match PackageNameWithNoSpaces-X.zip");
+		Integer version = getPackageVersion(filename);
+
+		String checksumProperty = GP_PACKAGE_CHECKSUM_PREFIX + groupUuid;
+		PackageChecksum stored = PackageChecksum.parse(Context.getAdministrationService().getGlobalProperty(checksumProperty));
+
+		BundleFingerprint fingerprint = recording.get();
+		if (fingerprint != null) {
+			PackageChecksum checksum = getPackageChecksum(filename, loader, stored);
+			fingerprint.addEntry("package", filename, groupUuid, importMode, checksum != null ? checksum.getChecksum() : null);
+			return false;
 		}
 
-		Integer version = Integer.valueOf(matcher.group(1));
+		markBundleWritten();
 
-		ImportedPackage installed = Context.getService(MetadataSharingService.class).getImportedPackageByGroup(groupUuid);
-		if (installed != null && installed.getVersion() >= version && installed.getDateImported() != null) {
-			log.info("Metadata package " + filename + " is already installed with version " + installed.getVersion());
+		PackageChecksum checksum = getPackageChecksum(filename, loader, stored);
+
+		if (isPackageInstalled(groupUuid, version, checksum, stored)) {
+			log.info("Metadata package " + filename + " is already installed");
+			saveChecksum(checksumProperty, checksum, stored);
 			return false;
 		}
 
-		if (loader.getResource(filename) == null) {
+		if (checksum == null) {
 			throw new APIException("Cannot load " + filename + " for group " + groupUuid);
 		}
 
 		try {
-			PackageImporter metadataImporter = MetadataSharing.getInstance().newPackageImporter();
+			PackageImporter metadataImporter = takePreloadedPackage(filename, groupUuid);
+			if (metadataImporter == null) {
+				metadataImporter = MetadataSharing.getInstance().newPackageImporter();
+				metadataImporter.loadSerializedPackageStream(ResourceUtils.openResource(loader, filename));
+			}
+
 			metadataImporter.setImportConfig(ImportConfig.valueOf(importMode));
-			metadataImporter.loadSerializedPackageStream(loader.getResourceAsStream(filename));
 			metadataImporter.importPackage();
 
-			log.debug("Loaded metadata package '" + filename + "'");
-			return true;
+			// Package import may have changed or evicted any object
+			clearScope();
+			getLookupCache().clear();
 
 		} catch (Exception ex) {
 			throw new APIException("Failed to install metadata package " + filename, ex);
 		}
+
+		saveChecksum(checksumProperty, checksum, stored);
+
+		log.debug("Loaded metadata package '" + filename + "'");
+		return true;
+	}
+
+	/**
+	 * Gets the version of a package from it's filename
+	 * @param filename the package filename
+	 * @return the version
+	 * @throws APIException if filename isn't valid
+	 */
+	protected static Integer getPackageVersion(String filename) throws APIException {
+		Matcher matcher = Pattern.compile("[\\w/-]+-(\\d+).zip").matcher(filename);
+		if (!matcher.matches()) {
+			throw new APIException("Filename must match PackageNameWithNoSpaces-X.zip");
+		}
+
+		return Integer.valueOf(matcher.group(1));
+	}
+
+	/**
+	 * Checks whether a package is already installed with the same or a later version, and with the same content
+	 * @param groupUuid the package group UUID
+	 * @param version the package version
+	 * @param checksum the package checksum (may be null if package doesn't exist)
+	 * @param stored the checksum stored when the package was last installed (may be null)
+	 * @return true if package is installed
+	 */
+	protected boolean isPackageInstalled(String groupUuid, Integer version, PackageChecksum checksum, PackageChecksum stored) {
+		ImportedPackage installed = Context.getService(MetadataSharingService.class).getImportedPackageByGroup(groupUuid);
+		if (installed == null || installed.getVersion() < version || installed.getDateImported() == null) {
+			return false;
+		}
+
+		// Packages installed before checksums were stored are assumed to be unchanged
+		if (stored != null && checksum != null && !checksum.matches(stored)) {
+			log.debug("Metadata package for group " + groupUuid + " has changed since it was installed");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Starts preloading the packages declared by bundles in a bundle graph, unless they are already installed
+	 * @param graph the bundle graph
+	 * @return the preloader or null if nothing is being preloaded
+	 */
+	protected PackagePreloader startPreloading(BundleGraph graph) {
+		int threads = getPackagePreloadThreads();
+		if (threads < 1) {
+			return null;
+		}
+
+		PackagePreloader preloader;
+		synchronized (this) {
+			// Nested or concurrent installs use the preloader of the first install
+			if (packagePreloader != null) {
+				return null;
+			}
+			preloader = packagePreloader = new PackagePreloader(threads);
+		}
+
+		try {
+			for (MetadataBundle bundle : graph.getInstallOrder()) {
+				if (bundle instanceof PackageBundle) {
+					for (PackageDescriptor pkg : ((PackageBundle) bundle).getPackages()) {
+						ClassLoader loader = pkg.getClassLoader() != null ? pkg.getClassLoader() : bundle.getClass().getClassLoader();
+						String checksumProperty = GP_PACKAGE_CHECKSUM_PREFIX + pkg.getGroupUuid();
+						PackageChecksum stored = PackageChecksum.parse(Context.getAdministrationService().getGlobalProperty(checksumProperty));
+
+						// Invalid packages are left to fail when their bundle installs them
+						try {
+							PackageChecksum checksum = getPackageChecksum(pkg.getFilename(), loader, stored);
+							Integer version = getPackageVersion(pkg.getFilename());
+
+							if (checksum != null && !isPackageInstalled(pkg.getGroupUuid(), version, checksum, stored)) {
+								preloader.preload(pkg.getFilename(), loader, pkg.getGroupUuid());
+							}
+						}
+						catch (APIException ex) {
+							log.debug("Not preloading invalid metadata package " + pkg.getFilename(), ex);
+						}
+					}
+				}
+			}
+		}
+		catch (RuntimeException ex) {
+			stopPreloading(preloader);
+			throw ex;
+		}
+
+		return preloader;
+	}
+
+	/**
+	 * Stops a preloader and discards any packages which weren't installed
+	 * @param preloader the preloader
+	 */
+	protected void stopPreloading(PackagePreloader preloader) {
+		synchronized (this) {
+			if (packagePreloader == preloader) {
+				packagePreloader = null;
+			}
+		}
+		preloader.close();
+	}
+
+	/**
+	 * Takes a preloaded package if one is available
+	 * @param filename the package filename
+	 * @param groupUuid the package group UUID
+	 * @return the package importer or null
+	 */
+	protected PackageImporter takePreloadedPackage(String filename, String groupUuid) {
+		PackagePreloader preloader = packagePreloader;
+		return preloader != null ? preloader.take(filename, groupUuid) : null;
+	}
+
+	/**
+	 * Gets the checksum of a package
+	 * @param filename the package resource path
+	 * @param loader the class loader
+	 * @param stored the checksum stored when the package was last installed (may be null)
+	 * @return the checksum or null if the package doesn't exist
+	 */
+	protected PackageChecksum getPackageChecksum(String filename, ClassLoader loader, PackageChecksum stored) {
+		try {
+			return PackageChecksum.calculate(loader, filename, stored);
+		}
+		catch (IOException ex) {
+			throw new APIException("Unable to calculate checksum of metadata package " + filename, ex);
+		}
+	}
+
+	/**
+	 * Stores the checksum of an installed package, unless it's the same as the stored checksum
+	 * @param property the global property name
+	 * @param checksum the checksum (may be null if package doesn't exist)
+	 * @param stored the currently stored checksum (may be null)
+	 */
+	protected void saveChecksum(String property, PackageChecksum checksum, PackageChecksum stored) {
+		if (checksum == null || (stored != null && checksum.toString().equals(stored.toString()))) {
+			return;
+		}
+
+		AdministrationService adminService = Context.getAdministrationService();
+		GlobalProperty gp = adminService.getGlobalPropertyObject(property);
+		if (gp == null) {
+			gp = new GlobalProperty(property, null, "Checksum of the last installed version of this metadata package");
+		}
+		gp.setPropertyValue(checksum.toString());
+		adminService.saveGlobalProperty(gp);
 	}
 
 
@@ -175,22 +784,157 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 			throw new APIException("Can't install object with no identifier");
 		}
 
+		BundleFingerprint fingerprint = recording.get();
+		if (fingerprint != null) {
+			fingerprint.addObject("install", incoming);
+			return incoming;
+		}
+
 		// Look for existing by primary identifier (i.e. exact match)
-		T existing = handler.fetch(identifier);
+		return installObject(handler, incoming, fetch(handler, identifier));
+	}
+
+	/**
+	 * @see MetadataDeployService#installObjects(java.util.Collection)
+	 */
+	@Override
+	public <T extends OpenmrsObject> List<T> installObjects(Collection<T> incoming) throws APIException {
+		// Group identifiers by handler so that existing objects of each type can be fetched together
+		Map<ObjectDeployHandler<T>, List<String>> identifiersByHandler = new LinkedHashMap<ObjectDeployHandler<T>, List<String>>();
+
+		for (T obj : incoming) {
+			ObjectDeployHandler<T> handler = getHandler(obj);
+			String identifier = handler.getIdentifier(obj);
+
+			if (identifier == null) {
+				throw new APIException("Can't install object with no identifier");
+			}
+
+			List<String> identifiers = identifiersByHandler.get(handler);
+			if (identifiers == null) {
+				identifiers = new ArrayList<String>();
+				identifiersByHandler.put(handler, identifiers);
+			}
+			identifiers.add(identifier);
+		}
+
+		List<T> installed = new ArrayList<T>(incoming.size());
+
+		BundleFingerprint fingerprint = recording.get();
+		if (fingerprint != null) {
+			for (T obj : incoming) {
+				fingerprint.addObject("install", obj);
+				installed.add(obj);
+			}
+			return installed;
+		}
+
+		// Look for existing by primary identifiers (i.e. exact matches)
+		Map<ObjectDeployHandler<T>, Map<String, T>> existingByHandler = new HashMap<ObjectDeployHandler<T>, Map<String, T>>();
+		for (Map.Entry<ObjectDeployHandler<T>, List<String>> entry : identifiersByHandler.entrySet()) {
+			long start = System.nanoTime();
+			Map<String, T> existing = fetchAll(entry.getKey(), entry.getValue());
+			getMetrics().recordOperation(entry.getKey(), DeployMetrics.Operation.FETCH_ALL, start);
+
+			existingByHandler.put(entry.getKey(), new HashMap<String, T>(existing));
+		}
+
+		for (T obj : incoming) {
+			ObjectDeployHandler<T> handler = getHandler(obj);
+			String identifier = handler.getIdentifier(obj);
+			Map<String, T> existing = existingByHandler.get(handler);
+
+			T result = installObject(handler, obj, existing.get(identifier));
+
+			// Later objects with the same identifier should overwrite this one
+			existing.put(identifier, result);
+			installed.add(result);
+		}
+		return installed;
+	}
+
+	/**
+	 * Fetches existing objects by their primary identifiers, in batches if the handler supports that or otherwise one
+	 * at a time
+	 * @param handler the handler
+	 * @param identifiers the identifiers
+	 * @return the map of identifiers to existing objects
+	 */
+	protected <T extends OpenmrsObject> Map<String, T> fetchAll(ObjectDeployHandler<T> handler, Collection<String> identifiers) {
+		if (handler instanceof BatchFetchingDeployHandler) {
+			return ((BatchFetchingDeployHandler<T>) handler).fetchAll(identifiers);
+		}
+
+		Map<String, T> existing = new HashMap<String, T>();
+		for (String identifier : identifiers) {
+			if (!existing.containsKey(identifier)) {
+				T obj = handler.fetch(identifier);
+				if (obj != null) {
+					existing.put(identifier, obj);
+				}
+			}
+		}
+		return existing;
+	}
+
+	/**
+	 * Installs an incoming object given the existing object with the same identifier
+	 * @param handler the handler
+	 * @param incoming the incoming object
+	 * @param existing the existing object with the same identifier (may be null)
+	 * @return the installed object (can be incoming or existing)
+	 */
+	protected <T extends OpenmrsObject> T installObject(ObjectDeployHandler<T> handler, T incoming, T existing) {
+		DeployMetrics metrics = getMetrics();
+
+		invalidateCached(handler, handler.getIdentifier(incoming));
 
 		// If no exact match, look for another existing item that should be replaced
 		if (existing == null) {
+			long start = System.nanoTime();
 			existing = handler.findAlternateMatch(incoming);
+			metrics.recordOperation(handler, DeployMetrics.Operation.FIND_ALTERNATE_MATCH, start);
+
+			if (existing != null) {
+				invalidateCached(handler, handler.getIdentifier(existing));
+			}
 		}
 
 		if (existing != null) {
-			handler.overwrite(incoming, existing);
+			// Nothing to do if existing object already matches the incoming object
+			if (!differs(handler, incoming, existing)) {
+				metrics.recordOutcome(handler, DeployMetrics.Outcome.UNCHANGED);
+				return existing;
+			}
+
+			overwrite(handler, incoming, existing);
 
-			return handler.save(existing);
+			metrics.recordOutcome(handler, DeployMetrics.Outcome.UPDATED);
+			return save(handler, existing);
 		}
 		else {
-			return handler.save(incoming);
+			metrics.recordOutcome(handler, DeployMetrics.Outcome.CREATED);
+			return save(handler, incoming);
+		}
+	}
+
+	/**
+	 * Checks whether overwriting an existing object with an incoming object would change it. Handlers which don't
+	 * extend {@link AbstractObjectDeployHandler} can't compare objects, so their objects are assumed to differ.
+	 * @param handler the handler
+	 * @param incoming the incoming object
+	 * @param existing the existing object
+	 * @return true if the existing object would be changed
+	 */
+	protected <T extends OpenmrsObject> boolean differs(ObjectDeployHandler<T> handler, T incoming, T existing) {
+		if (!(handler instanceof AbstractObjectDeployHandler)) {
+			return true;
 		}
+
+		long start = System.nanoTime();
+		boolean differs = ((AbstractObjectDeployHandler<T>) handler).differs(incoming, existing);
+		getMetrics().recordOperation(handler, DeployMetrics.Operation.DIFFERS, start);
+		return differs;
 	}
 
 	/**
@@ -208,8 +952,122 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 			return installed;
 		}
 		catch (Exception ex) {
-			throw new APIException("Unable to install objects from " + source.getClass().getSimpleName());
+			throw new APIException("Unable to install objects from " + source.getClass().getSimpleName(), ex);
+		}
+		finally {
+			closeSource(source);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployService#installFromSource(org.openmrs.module.metadatadeploy.source.ObjectSource, int, org.openmrs.module.metadatadeploy.source.InstallCallback)
+	 */
+	@Override
+	public <T extends OpenmrsObject> int installFromSource(ObjectSource<T> source, int chunkSize, InstallCallback<T> callback) throws APIException {
+		if (chunkSize < 1) {
+			throw new APIException("Chunk size must be at least 1");
+		}
+
+		List<T> chunk = new ArrayList<T>(chunkSize);
+		int count = 0;
+		T incoming;
+
+		try {
+			while ((incoming = source.fetchNext()) != null) {
+				chunk.add(incoming);
+
+				if (chunk.size() == chunkSize) {
+					count += installChunk(chunk, callback);
+					chunk.clear();
+				}
+			}
+
+			if (!chunk.isEmpty()) {
+				count += installChunk(chunk, callback);
+			}
+			return count;
+		}
+		catch (Exception ex) {
+			throw new APIException("Unable to install objects from " + source.getClass().getSimpleName(), ex);
+		}
+		finally {
+			closeSource(source);
+		}
+	}
+
+	/**
+	 * Closes or shuts down a source if possible, so that any background threads stop even if installing failed part way
+	 * @param source the source
+	 */
+	protected void closeSource(ObjectSource<?> source) {
+		try {
+			if (source instanceof Closeable) {
+				((Closeable) source).close();
+			}
+			else if (source instanceof AbstractCsvResourceSource) {
+				((AbstractCsvResourceSource<?>) source).shutdown();
+			}
+		}
+		catch (IOException ex) {
+			log.warn("Unable to close " + source.getClass().getSimpleName(), ex);
+		}
+	}
+
+	/**
+	 * Installs a chunk of objects from a source, and then flushes and clears the session
+	 * @param chunk the incoming objects
+	 * @param callback the callback for each installed object (may be null)
+	 * @return the number of installed objects
+	 */
+	protected <T extends OpenmrsObject> int installChunk(List<T> chunk, InstallCallback<T> callback) {
+		List<T> installed = installObjects(chunk);
+
+		if (callback != null) {
+			for (T obj : installed) {
+				callback.installed(obj);
+			}
+		}
+
+		// Nothing has been loaded or changed if we're only recording
+		if (recording.get() == null) {
+			Context.flushSession();
+			Context.clearSession();
+			clearScope();
+		}
+
+		log.debug("Installed chunk of " + installed.size() + " objects");
+
+		return installed.size();
+	}
+
+	/**
+	 * @see MetadataDeployService#setGlobalProperties(java.util.Map)
+	 */
+	@Override
+	public int setGlobalProperties(Map<String, String> properties) throws APIException {
+		BundleFingerprint fingerprint = recording.get();
+		if (fingerprint != null) {
+			// Sorted so that the fingerprint doesn't depend on the iteration order of the map
+			for (Map.Entry<String, String> entry : new TreeMap<String, String>(properties).entrySet()) {
+				fingerprint.addEntry("property", entry.getKey(), entry.getValue());
+			}
+			return 0;
+		}
+
+		GlobalPropertyDeployHandler handler = (GlobalPropertyDeployHandler) getHandler(GlobalProperty.class);
+		markBundleWritten();
+
+		long start = System.nanoTime();
+		List<GlobalProperty> changed = handler.saveValues(properties);
+		getMetrics().recordOperation(handler, DeployMetrics.Operation.SAVE, start);
+
+		for (GlobalProperty gp : changed) {
+			invalidateCached(handler, gp.getProperty());
 		}
+
+		log.debug("Set " + properties.size() + " global properties of which " + changed.size() + " were changed");
+
+		return changed.size();
 	}
 
 	/**
@@ -219,7 +1077,24 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 	public <T extends OpenmrsObject> void uninstallObject(T outgoing, String reason) {
 		ObjectDeployHandler<T> handler = getHandler(outgoing);
 
+		BundleFingerprint fingerprint = recording.get();
+		if (fingerprint != null) {
+			fingerprint.addEntry("uninstall", outgoing.getClass().getName(), handler.getIdentifier(outgoing), reason);
+			return;
+		}
+
+		invalidateCached(handler, handler.getIdentifier(outgoing));
+		markBundleWritten();
+
+		InstallScope scope = InstallScope.current();
+		if (scope != null) {
+			scope.invalidateIndex(handler);
+		}
+
+		long start = System.nanoTime();
 		handler.uninstall(outgoing, reason);
+		getMetrics().recordOperation(handler, DeployMetrics.Operation.UNINSTALL, start);
+		getMetrics().recordOutcome(handler, DeployMetrics.Outcome.UNINSTALLED);
 	}
 
 	/**
@@ -228,7 +1103,65 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 	@Override
 	public <T extends OpenmrsObject> T fetchObject(Class<T> clazz, String identifier) {
 		ObjectDeployHandler<T> handler = getHandler(clazz);
-		return handler.fetch(identifier);
+
+		// Objects fetched whilst recording belong to the recording transaction so mustn't be cached in the scope
+		InstallScope scope = recording.get() == null ? InstallScope.current() : null;
+		if (scope != null) {
+			T obj = scope.get(handler, identifier);
+			if (obj == null) {
+				obj = fetch(handler, identifier);
+
+				if (obj != null) {
+					scope.put(handler, identifier, obj);
+				}
+			}
+			return obj;
+		}
+
+		// The lookup cache only holds primary keys, which are resolved in the current session so that objects are never
+		// shared between threads or sessions
+		MetadataLookupCache cache = getLookupCache();
+		if (cache.isCached(clazz) && sessionFactory != null) {
+			Session session = sessionFactory.getCurrentSession();
+
+			Serializable id = cache.get(handler, identifier);
+			if (id != null) {
+				T obj = (T) session.get(clazz, id);
+
+				// The object may have been deleted or given a different identifier since it's key was cached
+				if (obj != null && identifierMatches(handler, obj, identifier)) {
+					getMetrics().recordLookup(true);
+					return obj;
+				}
+				cache.invalidate(handler, identifier);
+			}
+
+			getMetrics().recordLookup(false);
+
+			T obj = fetch(handler, identifier);
+			if (obj != null && session.contains(obj)) {
+				cache.put(handler, identifier, session.getIdentifier(obj));
+			}
+			return obj;
+		}
+
+		return fetch(handler, identifier);
+	}
+
+	/**
+	 * Checks whether an object still has the given identifier, ignoring case if the handler fetches by identifier
+	 * case-insensitively
+	 * @param handler the handler
+	 * @param obj the object
+	 * @param identifier the identifier
+	 * @return true if the object has the identifier
+	 */
+	protected <T extends OpenmrsObject> boolean identifierMatches(ObjectDeployHandler<T> handler, T obj, String identifier) {
+		String objIdentifier = handler.getIdentifier(obj);
+		if (handler instanceof AbstractObjectDeployHandler && !((AbstractObjectDeployHandler<T>) handler).isIdentifierCaseSensitive()) {
+			return identifier.equalsIgnoreCase(objIdentifier);
+		}
+		return identifier.equals(objIdentifier);
 	}
 
 	/**
@@ -237,7 +1170,15 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 	@Override
 	public <T extends OpenmrsObject> T saveObject(T obj) {
 		ObjectDeployHandler<T> handler = getHandler(obj);
-		return handler.save(obj);
+
+		BundleFingerprint fingerprint = recording.get();
+		if (fingerprint != null) {
+			fingerprint.addObject("save", obj);
+			return obj;
+		}
+
+		invalidateCached(handler, handler.getIdentifier(obj));
+		return save(handler, obj);
 	}
 
 	/**
@@ -247,8 +1188,106 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 	public <T extends OpenmrsObject> void overwriteObject(T source, T target) {
 		ObjectDeployHandler<T> handler = getHandler(source);
 
+		BundleFingerprint fingerprint = recording.get();
+		if (fingerprint != null) {
+			fingerprint.addObject("overwrite:" + handler.getIdentifier(target), source);
+			return;
+		}
+
+		invalidateCached(handler, handler.getIdentifier(target));
+		overwrite(handler, source, target);
+		invalidateCached(handler, handler.getIdentifier(target));
+		save(handler, target);
+	}
+
+	/**
+	 * Fetches an object using the given handler, recording the latency of the fetch
+	 * @param handler the handler
+	 * @param identifier the object identifier
+	 * @return the object or null
+	 */
+	protected <T extends OpenmrsObject> T fetch(ObjectDeployHandler<T> handler, String identifier) {
+		long start = System.nanoTime();
+		T obj = handler.fetch(identifier);
+		getMetrics().recordOperation(handler, DeployMetrics.Operation.FETCH, start);
+		return obj;
+	}
+
+	/**
+	 * Overwrites an object using the given handler, recording the latency of the overwrite
+	 * @param handler the handler
+	 * @param source the incoming object
+	 * @param target the existing object
+	 */
+	protected <T extends OpenmrsObject> void overwrite(ObjectDeployHandler<T> handler, T source, T target) {
+		long start = System.nanoTime();
 		handler.overwrite(source, target);
-		handler.save(target);
+		getMetrics().recordOperation(handler, DeployMetrics.Operation.OVERWRITE, start);
+	}
+
+	/**
+	 * Saves an object using the given handler, recording the latency of the save
+	 * @param handler the handler
+	 * @param obj the object
+	 * @return the saved object
+	 */
+	protected <T extends OpenmrsObject> T save(ObjectDeployHandler<T> handler, T obj) {
+		markBundleWritten();
+
+		long start = System.nanoTime();
+		T saved = handler.save(obj);
+		getMetrics().recordOperation(handler, DeployMetrics.Operation.SAVE, start);
+
+		InstallScope scope = InstallScope.current();
+		if (scope != null) {
+			scope.indexSaved(handler, saved);
+		}
+		return saved;
+	}
+
+	/**
+	 * Checks whether the current thread is recording the content of a bundle rather than installing it
+	 * @return true if recording
+	 */
+	protected static boolean isRecording() {
+		return recording.get() != null;
+	}
+
+	/**
+	 * Notes that the bundle being installed by the current thread, if there is one, has written something
+	 */
+	protected static void markBundleWritten() {
+		if (bundleWritten.get() != null) {
+			bundleWritten.set(Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Removes an object from the lookup cache, and from the install scope of the current thread if there is one
+	 * @param handler the handler
+	 * @param identifier the object identifier
+	 */
+	protected <T extends OpenmrsObject> void invalidateCached(ObjectDeployHandler<T> handler, String identifier) {
+		if (identifier == null) {
+			return;
+		}
+
+		InstallScope scope = InstallScope.current();
+		if (scope != null) {
+			scope.invalidate(handler, identifier);
+		}
+
+		getLookupCache().invalidate(handler, identifier);
+	}
+
+	/**
+	 * Removes all objects from the install scope of the current thread, if there is one
+	 */
+	protected void clearScope() {
+		InstallScope scope = InstallScope.current();
+		if (scope != null) {
+			scope.clear();
+		}
 	}
 
 	/**
@@ -268,15 +1307,25 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 	 * @throws RuntimeException if no suitable handler exists
 	 */
 	protected <T extends OpenmrsObject> ObjectDeployHandler<T> getHandler(Class<T> clazz) throws RuntimeException {
-        // assumes there is only one ObjectDeployHandlers component
-		ObjectDeployHandler<T> handler = Context.getRegisteredComponents(ObjectDeployHandlers.class).get(0).getHandlers().get(clazz);
+		ObjectDeployHandler<T> handler = getObjectDeployHandlers().getHandler(clazz);
 		if (handler != null) {
 			return handler;
 		}
-		if (clazz.getSimpleName().contains("_$$")) {
-			return getHandler((Class<T>) clazz.getSuperclass());
-		}
 
 		throw new RuntimeException("No handler class found for " + clazz.getName());
 	}
-}
+
+	/**
+	 * Gets the handlers component, which is looked up on first use rather than autowired (see ObjectDeployHandlers)
+	 * @return the handlers component
+	 */
+	protected ObjectDeployHandlers getObjectDeployHandlers() {
+		ObjectDeployHandlers handlers = objectDeployHandlers;
+		if (handlers == null) {
+			// assumes there is only one ObjectDeployHandlers component
+			handlers = Context.getRegisteredComponents(ObjectDeployHandlers.class).get(0);
+			objectDeployHandlers = handlers;
+		}
+		return handlers;
+	}
+}
\ No newline at end of file
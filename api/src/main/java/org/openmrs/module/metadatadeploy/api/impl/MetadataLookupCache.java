@@ -0,0 +1,202 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the primary keys of objects fetched by identifier outside of bundle installs, for metadata types
+ * which rarely change. The least recently used entry is evicted when the cache is full, and entries expire after a
+ * fixed time.
+ *
+ * Only primary keys are cached, never objects, so that entities aren't shared between threads and sessions. Callers
+ * resolve a cached key in their own session, which returns the object from the session or from Hibernate's second
+ * level cache if there is one, and should check that it still has the requested identifier.
+ */
+public class MetadataLookupCache {
+
+	private final Set<Class<?>> types;
+
+	private final int maxSize;
+
+	private final long timeToLive;
+
+	private final Map<Key, Entry> entries;
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates a new cache
+	 * @param types the object classes which should be cached
+	 * @param maxSize the maximum number of cached objects
+	 * @param timeToLive the number of milliseconds after which cached objects expire
+	 */
+	public MetadataLookupCache(Collection<Class<?>> types, final int maxSize, long timeToLive) {
+		this.types = Collections.unmodifiableSet(new HashSet<Class<?>>(types));
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive;
+
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				if (size() > maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Checks whether objects of the given class are cached
+	 * @param clazz the object class
+	 * @return true if objects are cached
+	 */
+	public boolean isCached(Class<?> clazz) {
+		return types.contains(clazz);
+	}
+
+	/**
+	 * Gets the cached primary key of an object
+	 * @param handler the handler of the object class
+	 * @param identifier the object identifier
+	 * @return the primary key or null if it isn't cached or has expired
+	 */
+	public synchronized <T extends OpenmrsObject> Serializable get(ObjectDeployHandler<T> handler, String identifier) {
+		Key key = new Key(handler, identifier);
+		Entry entry = entries.get(key);
+
+		if (entry != null && System.currentTimeMillis() - entry.created >= timeToLive) {
+			entries.remove(key);
+			evictions.incrementAndGet();
+			entry = null;
+		}
+
+		return entry != null ? entry.id : null;
+	}
+
+	/**
+	 * Caches the primary key of an object
+	 * @param handler the handler of the object class
+	 * @param identifier the object identifier
+	 * @param id the primary key
+	 */
+	public synchronized <T extends OpenmrsObject> void put(ObjectDeployHandler<T> handler, String identifier, Serializable id) {
+		entries.put(new Key(handler, identifier), new Entry(id, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Removes a cached primary key, e.g. because the object is being saved or uninstalled
+	 * @param handler the handler of the object class
+	 * @param identifier the object identifier
+	 */
+	public synchronized <T extends OpenmrsObject> void invalidate(ObjectDeployHandler<T> handler, String identifier) {
+		entries.remove(new Key(handler, identifier));
+	}
+
+	/**
+	 * Removes all cached primary keys
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Gets the object classes which are cached
+	 * @return the classes
+	 */
+	public Set<Class<?>> getTypes() {
+		return types;
+	}
+
+	/**
+	 * Gets the maximum number of cached primary keys
+	 * @return the maximum size
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the current number of cached primary keys, which may include expired keys
+	 * @return the size
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the number of primary keys which have been removed because the cache was full or they expired
+	 * @return the number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Cache key of an object
+	 */
+	private static class Key {
+
+		private final ObjectDeployHandler<?> handler;
+
+		private final String identifier;
+
+		public Key(ObjectDeployHandler<?> handler, String identifier) {
+			this.handler = handler;
+			this.identifier = identifier;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return handler == other.handler && identifier.equals(other.identifier);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(handler) + identifier.hashCode();
+		}
+	}
+
+	/**
+	 * Cached primary key and the time it was cached
+	 */
+	private static class Entry {
+
+		private final Serializable id;
+
+		private final long created;
+
+		public Entry(Serializable id, long created) {
+			this.id = id;
+			this.created = created;
+		}
+	}
+}
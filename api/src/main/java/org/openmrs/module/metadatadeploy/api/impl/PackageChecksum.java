@@ -0,0 +1,151 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.api.APIException;
+import org.openmrs.module.metadatadeploy.ResourceUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Checksum of the content of a metadata sharing package, so that a package is only imported again if it's content has
+ * changed. If the package is available as a file, the checksum is stored with the file's modification time and size,
+ * and only recalculated when either of those change.
+ *
+ * Stored as a string of the form checksum|stamp, or just checksum if the package isn't available as a file.
+ */
+public class PackageChecksum {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String checksum;
+
+	private final String fileStamp;
+
+	/**
+	 * Creates a new checksum
+	 * @param checksum the checksum of the package content
+	 * @param fileStamp the modification time and size of the package file (may be null)
+	 */
+	public PackageChecksum(String checksum, String fileStamp) {
+		this.checksum = checksum;
+		this.fileStamp = fileStamp;
+	}
+
+	/**
+	 * Parses a stored checksum
+	 * @param value the stored value
+	 * @return the checksum or null if value is empty
+	 */
+	public static PackageChecksum parse(String value) {
+		if (StringUtils.isEmpty(value)) {
+			return null;
+		}
+
+		int separator = value.indexOf('|');
+		if (separator < 0) {
+			return new PackageChecksum(value, null);
+		}
+		return new PackageChecksum(value.substring(0, separator), value.substring(separator + 1));
+	}
+
+	/**
+	 * Calculates the checksum of a package, unless it's file hasn't changed since the previous checksum
+	 * @param loader the class loader
+	 * @param filename the package resource path
+	 * @param previous the previous checksum (may be null)
+	 * @return the checksum or null if the package doesn't exist
+	 * @throws IOException if an error occurs
+	 */
+	public static PackageChecksum calculate(ClassLoader loader, String filename, PackageChecksum previous) throws IOException {
+		File file = ResourceUtils.getResourceFile(loader, filename);
+		String fileStamp = file != null ? file.lastModified() + ":" + file.length() : null;
+
+		if (fileStamp != null && previous != null && fileStamp.equals(previous.fileStamp)) {
+			return previous;
+		}
+
+		InputStream in = ResourceUtils.openResource(loader, filename);
+		if (in == null) {
+			return null;
+		}
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new APIException("SHA-1 digest not available", ex);
+		}
+
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, count);
+			}
+		}
+		finally {
+			in.close();
+		}
+
+		byte[] bytes = digest.digest();
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+
+		return new PackageChecksum(hex.toString(), fileStamp);
+	}
+
+	/**
+	 * Gets the checksum of the package content
+	 * @return the checksum
+	 */
+	public String getChecksum() {
+		return checksum;
+	}
+
+	/**
+	 * Gets the modification time and size of the package file
+	 * @return the file stamp or null if the package isn't available as a file
+	 */
+	public String getFileStamp() {
+		return fileStamp;
+	}
+
+	/**
+	 * Checks whether this and another checksum are of the same package content
+	 * @param other the other checksum (may be null)
+	 * @return true if the content is the same
+	 */
+	public boolean matches(PackageChecksum other) {
+		return other != null && checksum.equals(other.checksum);
+	}
+
+	/**
+	 * Gets the stored form of this checksum
+	 * @return the stored value
+	 */
+	@Override
+	public String toString() {
+		return fileStamp != null ? checksum + "|" + fileStamp : checksum;
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.metadatadeploy.ResourceUtils;
+import org.openmrs.module.metadatadeploy.SessionTask;
+import org.openmrs.module.metadatasharing.MetadataSharing;
+import org.openmrs.module.metadatasharing.wrapper.PackageImporter;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads metadata packages on a pool of background threads, so that reading and unpacking a package overlaps with the
+ * installation of other bundles. Each package is loaded into it's own importer, which is handed over to be imported
+ * when the package is installed.
+ */
+public class PackagePreloader {
+
+	protected static final Log log = LogFactory.getLog(PackagePreloader.class);
+
+	private final ExecutorService executor;
+
+	private final Map<String, Future<PackageImporter>> importers = new HashMap<String, Future<PackageImporter>>();
+
+	/**
+	 * Creates a new preloader
+	 * @param threads the number of packages which can be loaded at the same time
+	 */
+	public PackagePreloader(int threads) {
+		this.executor = Executors.newFixedThreadPool(threads, new PreloadThreadFactory());
+	}
+
+	/**
+	 * Starts loading a package. Packages are loaded in the order they are submitted.
+	 * @param filename the package resource path
+	 * @param loader the class loader
+	 * @param groupUuid the package group UUID
+	 */
+	public synchronized void preload(String filename, ClassLoader loader, String groupUuid) {
+		String key = getKey(filename, groupUuid);
+		if (!importers.containsKey(key)) {
+			importers.put(key, executor.submit(new PreloadTask(filename, loader)));
+		}
+	}
+
+	/**
+	 * Takes the importer of a package, waiting for it to finish loading if necessary
+	 * @param filename the package resource path
+	 * @param groupUuid the package group UUID
+	 * @return the importer or null if package wasn't preloaded or couldn't be loaded
+	 */
+	public PackageImporter take(String filename, String groupUuid) {
+		Future<PackageImporter> future;
+		synchronized (this) {
+			future = importers.remove(getKey(filename, groupUuid));
+		}
+
+		if (future == null) {
+			return null;
+		}
+
+		try {
+			return future.get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException ex) {
+			// Package will be loaded again by the installing thread, which reports the error
+			log.warn("Unable to preload metadata package " + filename, ex.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Stops loading packages and discards any which weren't taken
+	 */
+	public synchronized void close() {
+		executor.shutdownNow();
+
+		if (!importers.isEmpty()) {
+			log.debug("Discarding " + importers.size() + " preloaded metadata packages which weren't installed");
+			for (Future<PackageImporter> future : importers.values()) {
+				future.cancel(true);
+			}
+			importers.clear();
+		}
+	}
+
+	private static String getKey(String filename, String groupUuid) {
+		return groupUuid + ":" + filename;
+	}
+
+	/**
+	 * Task which loads a package in a new session
+	 */
+	protected static class PreloadTask extends SessionTask<PackageImporter> {
+
+		private final String filename;
+
+		private final ClassLoader loader;
+
+		public PreloadTask(String filename, ClassLoader loader) {
+			this.filename = filename;
+			this.loader = loader;
+		}
+
+		@Override
+		protected PackageImporter doInSession() throws Exception {
+			long start = System.currentTimeMillis();
+
+			InputStream in = ResourceUtils.openResource(loader, filename);
+			if (in == null) {
+				throw new IllegalArgumentException("Cannot load " + filename);
+			}
+
+			PackageImporter importer = MetadataSharing.getInstance().newPackageImporter();
+			importer.loadSerializedPackageStream(in);
+
+			log.debug("Preloaded metadata package " + filename + " in " + (System.currentTimeMillis() - start) + "ms");
+
+			return importer;
+		}
+	}
+
+	/**
+	 * Creates named daemon threads so that preload workers can be identified in thread dumps
+	 */
+	protected static class PreloadThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "metadatadeploy-preload-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
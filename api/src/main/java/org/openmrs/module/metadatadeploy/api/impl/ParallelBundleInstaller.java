@@ -0,0 +1,189 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.module.metadatadeploy.SessionTask;
+import org.openmrs.module.metadatadeploy.bundle.BundleGraph;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.handler.InstallScope;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Installs a graph of bundles on a bounded pool of worker threads. A bundle is started as soon as all of it's required
+ * bundles have been installed, so independent branches of the graph are installed at the same time. Each bundle is
+ * installed in it's own Hibernate session and transaction.
+ */
+public class ParallelBundleInstaller {
+
+	protected static final Log log = LogFactory.getLog(ParallelBundleInstaller.class);
+
+	private static final ThreadLocal<Boolean> installingBundle = new ThreadLocal<Boolean>();
+
+	private final MetadataDeployServiceImpl deployService;
+
+	private final PlatformTransactionManager transactionManager;
+
+	private final int threads;
+
+	/**
+	 * Creates a new installer
+	 * @param deployService the deploy service
+	 * @param transactionManager the transaction manager
+	 * @param threads the maximum number of bundles to install at the same time
+	 */
+	public ParallelBundleInstaller(MetadataDeployServiceImpl deployService, PlatformTransactionManager transactionManager, int threads) {
+		this.deployService = deployService;
+		this.transactionManager = transactionManager;
+		this.threads = threads;
+	}
+
+	/**
+	 * Installs all bundles in the given graph. If any bundle fails, no further bundles are started and the first
+	 * failure is thrown once running bundles have finished.
+	 * @param graph the bundle graph
+	 * @throws APIException if an error occurs
+	 */
+	public void install(BundleGraph graph) throws APIException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new InstallThreadFactory());
+		CompletionService<MetadataBundle> completionService = new ExecutorCompletionService<MetadataBundle>(executor);
+
+		// Number of uninstalled requirements of each bundle
+		Map<MetadataBundle, Integer> remaining = new HashMap<MetadataBundle, Integer>();
+		int submitted = 0, completed = 0;
+
+		for (MetadataBundle bundle : graph.getInstallOrder()) {
+			int requirementCount = graph.getRequirements(bundle).size();
+			remaining.put(bundle, requirementCount);
+
+			if (requirementCount == 0) {
+				completionService.submit(new BundleTask(bundle));
+				submitted++;
+			}
+		}
+
+		Throwable failure = null;
+
+		try {
+			while (completed < submitted) {
+				Future<MetadataBundle> future = completionService.take();
+				completed++;
+
+				try {
+					MetadataBundle installed = future.get();
+
+					if (failure == null) {
+						for (MetadataBundle dependent : graph.getDependents(installed)) {
+							int requirementCount = remaining.get(dependent) - 1;
+							remaining.put(dependent, requirementCount);
+
+							if (requirementCount == 0) {
+								completionService.submit(new BundleTask(dependent));
+								submitted++;
+							}
+						}
+					}
+				}
+				catch (ExecutionException ex) {
+					if (failure == null) {
+						failure = ex.getCause();
+					}
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new APIException("Interrupted whilst installing bundles", ex);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		if (failure instanceof APIException) {
+			throw (APIException) failure;
+		}
+		else if (failure != null) {
+			throw new APIException("Unable to install bundles", failure);
+		}
+	}
+
+	/**
+	 * Gets whether the current thread is a worker which is installing a bundle
+	 * @return true if the current thread is installing a bundle
+	 */
+	public static boolean isInstallingBundle() {
+		return Boolean.TRUE.equals(installingBundle.get());
+	}
+
+	/**
+	 * Task which installs a single bundle in a new session and transaction
+	 */
+	protected class BundleTask extends SessionTask<MetadataBundle> {
+
+		private final MetadataBundle bundle;
+
+		public BundleTask(MetadataBundle bundle) {
+			// Read committed so that the rest of a bundle can see objects committed by any lanes it installs
+			super(transactionManager, TransactionDefinition.ISOLATION_READ_COMMITTED);
+			this.bundle = bundle;
+		}
+
+		@Override
+		protected MetadataBundle doInSession() throws Exception {
+			log.debug("Installing bundle " + bundle.getClass().getSimpleName() + " on " + Thread.currentThread().getName());
+
+			// Each worker has it's own session so can't share cached objects with other workers
+			InstallScope scope = InstallScope.open();
+			installingBundle.set(Boolean.TRUE);
+			try {
+				deployService.installBundleContent(bundle);
+				return bundle;
+			}
+			finally {
+				installingBundle.remove();
+				deployService.closeScope(scope);
+			}
+		}
+	}
+
+	/**
+	 * Creates named daemon threads so that install workers can be identified in thread dumps
+	 */
+	protected static class InstallThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "metadatadeploy-install-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -16,7 +16,6 @@ package org.openmrs.module.metadatadeploy.bundle;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.openmrs.GlobalProperty;
 import org.openmrs.LocationAttributeType;
 import org.openmrs.OpenmrsMetadata;
 import org.openmrs.OpenmrsObject;
@@ -41,6 +40,7 @@ import org.openmrs.module.metadatadeploy.descriptor.ProgramDescriptor;
 import org.openmrs.module.metadatadeploy.descriptor.ProgramWorkflowDescriptor;
 import org.openmrs.module.metadatadeploy.descriptor.ProgramWorkflowStateDescriptor;
 import org.openmrs.module.metadatadeploy.descriptor.RoleDescriptor;
+import org.openmrs.module.metadatadeploy.source.InstallCallback;
 import org.openmrs.module.metadatadeploy.source.ObjectSource;
 import org.openmrs.module.metadatadeploy.sync.MetadataSynchronizationRunner;
 import org.openmrs.module.metadatadeploy.sync.ObjectSynchronization;
@@ -49,11 +49,11 @@ import org.openmrs.module.metadatasharing.ImportMode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.transaction.PlatformTransactionManager;
-import org.springframework.transaction.TransactionStatus;
-import org.springframework.transaction.support.TransactionCallbackWithoutResult;
-import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -74,6 +74,10 @@ public abstract class AbstractMetadataBundle implements MetadataBundle {
 
 	protected Log log = LogFactory.getLog(getClass());
 
+	/**
+	 * @deprecated no longer used by this class, as global properties are set through the deploy service
+	 */
+	@Deprecated
 	@Autowired
 	protected PlatformTransactionManager platformTransactionManager;
 
@@ -95,6 +99,16 @@ public abstract class AbstractMetadataBundle implements MetadataBundle {
 		deployService.installPackage(pkg.getFilename(), loader, pkg.getGroupUuid(), importMode);
 	}
 
+	/**
+	 * Installs groups of independent objects, which may be done at the same time on parallel lanes. This returns once
+	 * all lanes have finished, so later installs can depend on objects installed by any lane. This must be called
+	 * before the bundle installs anything else, and parallel lanes are committed even if the bundle later fails.
+	 * @param lanes the lanes
+	 */
+	protected void install(InstallLane... lanes) {
+		deployService.installLanes(Arrays.asList(lanes));
+	}
+
 	/**
 	 * Installs the given object
 	 * @param incoming the incoming object
@@ -104,6 +118,15 @@ public abstract class AbstractMetadataBundle implements MetadataBundle {
 		return deployService.installObject(incoming);
 	}
 
+	/**
+	 * Installs a collection of objects, fetching existing objects in batches
+	 * @param incoming the incoming objects
+	 * @return the installed objects
+	 */
+	protected <T extends OpenmrsObject> List<T> install(Collection<T> incoming) {
+		return deployService.installObjects(incoming);
+	}
+
 	/**
 	 * Installs all objects from the given source
 	 * @param source the object source
@@ -113,6 +136,17 @@ public abstract class AbstractMetadataBundle implements MetadataBundle {
 		return deployService.installFromSource(source);
 	}
 
+	/**
+	 * Installs all objects from the given source in chunks, flushing and clearing the session after each chunk
+	 * @param source the source
+	 * @param chunkSize the number of objects per chunk
+	 * @param callback the callback for each installed object (may be null)
+	 * @return the number of installed objects
+	 */
+	protected <T extends OpenmrsObject> int install(ObjectSource<T> source, int chunkSize, InstallCallback<T> callback) {
+		return deployService.installFromSource(source, chunkSize, callback);
+	}
+
 	/**
 	 * Uninstalls the given object. The object can be null in which case the method does nothing.
 	 * @param outgoing the outgoing object
@@ -166,31 +200,17 @@ public abstract class AbstractMetadataBundle implements MetadataBundle {
 	 */
 
 	/**
-	 * Setting multiple GPs is much faster in a single transaction
+	 * Setting multiple GPs is much faster in bulk, as only those whose values have changed are written
 	 */
-	protected void setGlobalProperties(final Map<String, String> properties) {
-		TransactionTemplate transactionTemplate = new TransactionTemplate(platformTransactionManager);
-		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
-			@Override
-			protected void doInTransactionWithoutResult(TransactionStatus status) {
-				for (Map.Entry<String, String> entry : properties.entrySet()) {
-					setGlobalProperty(entry.getKey(), entry.getValue());
-				}
-			}
-		});
+	protected void setGlobalProperties(Map<String, String> properties) {
+		deployService.setGlobalProperties(properties);
 	}
 
 	/**
 	 * Update the global property with the given name to the given value, creating it if it doesn't exist
 	 */
 	protected void setGlobalProperty(String propertyName, String propertyValue) {
-		AdministrationService administrationService = Context.getAdministrationService();
-		GlobalProperty gp = administrationService.getGlobalPropertyObject(propertyName);
-		if (gp == null) {
-			gp = new GlobalProperty(propertyName);
-		}
-		gp.setPropertyValue(propertyValue);
-		administrationService.saveGlobalProperty(gp);
+		deployService.setGlobalProperties(Collections.singletonMap(propertyName, propertyValue));
 	}
 
 	/**
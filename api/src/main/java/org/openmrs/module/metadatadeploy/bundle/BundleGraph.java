@@ -0,0 +1,137 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import org.openmrs.api.APIException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependency graph of metadata bundles built from their @Requires annotations. The graph is resolved completely
+ * before anything is installed so that missing and cyclic requirements are reported up front.
+ */
+public class BundleGraph {
+
+	private List<MetadataBundle> installOrder = new ArrayList<MetadataBundle>();
+
+	private Map<MetadataBundle, Set<MetadataBundle>> requirements = new HashMap<MetadataBundle, Set<MetadataBundle>>();
+
+	private Map<MetadataBundle, Set<MetadataBundle>> dependents = new HashMap<MetadataBundle, Set<MetadataBundle>>();
+
+	/**
+	 * Builds the graph of the given bundles and all their transitive requirements
+	 * @param bundles the bundles to install
+	 * @param all the map of all available bundles by class
+	 * @throws APIException if a required bundle is missing or requirements are cyclic
+	 */
+	public BundleGraph(Collection<MetadataBundle> bundles, Map<Class<? extends MetadataBundle>, MetadataBundle> all) throws APIException {
+		for (MetadataBundle bundle : bundles) {
+			visit(bundle, all, new LinkedList<MetadataBundle>());
+		}
+	}
+
+	/**
+	 * Visits a bundle by first visiting it's required bundles
+	 * @param bundle the bundle
+	 * @param all the map of all available bundles by class
+	 * @param path the chain of bundles currently being visited
+	 */
+	protected void visit(MetadataBundle bundle, Map<Class<? extends MetadataBundle>, MetadataBundle> all, LinkedList<MetadataBundle> path) throws APIException {
+		// Return immediately if bundle has already been visited
+		if (requirements.containsKey(bundle)) {
+			return;
+		}
+
+		if (path.contains(bundle)) {
+			StringBuilder chain = new StringBuilder();
+			for (MetadataBundle inPath : path.subList(path.indexOf(bundle), path.size())) {
+				chain.append(inPath.getClass().getSimpleName()).append(" -> ");
+			}
+			chain.append(bundle.getClass().getSimpleName());
+
+			throw new APIException("Cyclic @Requires dependency: " + chain);
+		}
+
+		path.addLast(bundle);
+
+		Set<MetadataBundle> required = new LinkedHashSet<MetadataBundle>();
+		Requires requires = bundle.getClass().getAnnotation(Requires.class);
+		if (requires != null) {
+			for (Class<? extends MetadataBundle> requiredClass : requires.value()) {
+				MetadataBundle requiredBundle = all.get(requiredClass);
+
+				if (requiredBundle == null) {
+					throw new APIException("Can't find required bundle class " + requiredClass + " for " + bundle.getClass());
+				}
+
+				visit(requiredBundle, all, path);
+				required.add(requiredBundle);
+			}
+		}
+
+		path.removeLast();
+
+		requirements.put(bundle, required);
+		dependents.put(bundle, new LinkedHashSet<MetadataBundle>());
+		for (MetadataBundle requiredBundle : required) {
+			dependents.get(requiredBundle).add(bundle);
+		}
+
+		installOrder.add(bundle);
+	}
+
+	/**
+	 * Gets all bundles in an order where each bundle comes after all of it's requirements. This is the same order in
+	 * which bundles are installed serially.
+	 * @return the bundles
+	 */
+	public List<MetadataBundle> getInstallOrder() {
+		return Collections.unmodifiableList(installOrder);
+	}
+
+	/**
+	 * Gets the bundles directly required by the given bundle
+	 * @param bundle the bundle
+	 * @return the required bundles
+	 */
+	public Set<MetadataBundle> getRequirements(MetadataBundle bundle) {
+		return Collections.unmodifiableSet(requirements.get(bundle));
+	}
+
+	/**
+	 * Gets the bundles which directly require the given bundle
+	 * @param bundle the bundle
+	 * @return the dependent bundles
+	 */
+	public Set<MetadataBundle> getDependents(MetadataBundle bundle) {
+		return Collections.unmodifiableSet(dependents.get(bundle));
+	}
+
+	/**
+	 * Gets the number of bundles in the graph
+	 * @return the number of bundles
+	 */
+	public int size() {
+		return installOrder.size();
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+/**
+ * A group of installs which doesn't depend on the installs of any other lane in the same group, so may be run at the
+ * same time as them on another thread. Lanes run in their own sessions and transactions, so must only depend on
+ * metadata which has already been committed, e.g. by required bundles. For the same reason, lanes can only be
+ * installed before their bundle has written anything, and a lane's changes stay committed even if the rest of it's
+ * bundle fails and is rolled back.
+ */
+public abstract class InstallLane {
+
+	private final String name;
+
+	/**
+	 * Creates a new lane
+	 * @param name the name used when reporting the lane's timing
+	 */
+	public InstallLane(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Gets the name of this lane
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Performs the installs of this lane
+	 * @throws Exception if an error occurs
+	 */
+	public abstract void run() throws Exception;
+}
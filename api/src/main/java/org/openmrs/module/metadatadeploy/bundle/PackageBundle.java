@@ -0,0 +1,31 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import java.util.Collection;
+
+/**
+ * Interface for metadata bundles which declare the metadata packages they install, so that the packages can be loaded
+ * in the background before the bundle's turn comes to be installed. The bundle should still install each package
+ * itself from it's install method.
+ */
+public interface PackageBundle extends MetadataBundle {
+
+	/**
+	 * Gets the packages installed by this bundle
+	 * @return the package descriptors
+	 */
+	Collection<PackageDescriptor> getPackages();
+}
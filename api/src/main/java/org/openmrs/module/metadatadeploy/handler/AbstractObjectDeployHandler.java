@@ -14,19 +14,37 @@
 
 package org.openmrs.module.metadatadeploy.handler;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Restrictions;
 import org.openmrs.OpenmrsObject;
 import org.openmrs.Retireable;
 import org.openmrs.Voidable;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.ObjectUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Abstract base class for object deploy handlers
  */
-public abstract class AbstractObjectDeployHandler<T extends OpenmrsObject> implements ObjectDeployHandler<T> {
+public abstract class AbstractObjectDeployHandler<T extends OpenmrsObject> implements BatchFetchingDeployHandler<T> {
+
+	/**
+	 * Maximum number of identifiers in a single IN (...) query
+	 */
+	protected static final int FETCH_BATCH_SIZE = 500;
+
+	@Autowired
+	private SessionFactory sessionFactory;
 
 	/**
 	 * Generally objects are identified by their UUID. Roles, Privileges and Global Properties are exceptions because
@@ -39,6 +57,32 @@ public abstract class AbstractObjectDeployHandler<T extends OpenmrsObject> imple
 		return obj.getUuid();
 	}
 
+	/**
+	 * Checks whether identifiers are matched exactly when fetching objects. Objects which are identified by name may be
+	 * fetched case-insensitively.
+	 * @return true if identifiers are case-sensitive
+	 */
+	public boolean isIdentifierCaseSensitive() {
+		return true;
+	}
+
+	/**
+	 * Fetches each object individually. Handlers which can query their objects directly should override this.
+	 *
+	 * @see BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, T> fetchAll(Collection<String> identifiers) {
+		Map<String, T> existing = new HashMap<String, T>();
+		for (String identifier : new LinkedHashSet<String>(identifiers)) {
+			T obj = fetch(identifier);
+			if (obj != null) {
+				existing.put(identifier, obj);
+			}
+		}
+		return existing;
+	}
+
 	/**
 	 * @see ObjectDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject)
 	 */
@@ -64,6 +108,61 @@ public abstract class AbstractObjectDeployHandler<T extends OpenmrsObject> imple
 		}
 	}
 
+	/**
+	 * Checks whether overwriting the existing object with the incoming object would change it. If not, the existing
+	 * object doesn't need to be overwritten or saved. Objects of handlers which don't extend this class are always
+	 * assumed to differ.
+	 * @param incoming the incoming object
+	 * @param existing the existing object
+	 * @return true if the existing object would be changed
+	 */
+	public boolean differs(T incoming, T existing) {
+		return differs(incoming, existing, null);
+	}
+
+	/**
+	 * Checks whether overwriting the existing object with the incoming object, excluding the given fields, would change
+	 * it. The id of the existing object is kept by overwrite, so it's ignored here as well.
+	 * @param incoming the incoming object
+	 * @param existing the existing object
+	 * @param excludeFields the names of fields to be excluded
+	 * @return true if the existing object would be changed
+	 */
+	protected boolean differs(T incoming, T existing, Set<String> excludeFields) {
+		// Objects which aren't attached to the session, e.g. concepts being converted to numeric, always need saving
+		if (!getCurrentSession().contains(existing)) {
+			return true;
+		}
+
+		boolean usesId = ObjectUtils.usesId(incoming);
+		Integer incomingId = usesId ? incoming.getId() : null;
+
+		if (usesId) {
+			incoming.setId(existing.getId());
+		}
+
+		try {
+			return ObjectUtils.differs(incoming, existing, excludeFields);
+		}
+		finally {
+			if (usesId) {
+				incoming.setId(incomingId);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether merging the incoming items into the existing items would change them. Existing items with no
+	 * incoming match must already be voided or retired, as they would otherwise be voided, retired or removed.
+	 * @param existing the existing items
+	 * @param incoming the incoming items
+	 * @param excludeFields the names of item fields to be excluded
+	 * @return true if the existing items would be changed
+	 */
+	protected <E extends OpenmrsObject> boolean collectionDiffers(Collection<E> existing, Collection<E> incoming, Set<String> excludeFields) {
+		return new CollectionMerger<E>(excludeFields).differs(existing, incoming);
+	}
+
 	protected <T extends OpenmrsObject> T findExisting(Collection<T> collection, T incomingItem) {
 		for (T candidate : collection) {
 			if (candidate.getUuid().equals(incomingItem.getUuid())) {
@@ -93,5 +192,90 @@ public abstract class AbstractObjectDeployHandler<T extends OpenmrsObject> imple
 		}
 	}
 
+	/**
+	 * Fetches objects of the given class whose property matches any of the given values, using one query per batch of
+	 * values. Values can be matched exactly, or case-insensitively where fetching a single object by that property
+	 * also ignores case (e.g. role names).
+	 * @param clazz the object class
+	 * @param property the identifying property (e.g. "uuid")
+	 * @param values the property values
+	 * @param ignoreCase whether values are matched case-insensitively
+	 * @return the map of requested values to existing objects
+	 */
+	protected Map<String, T> fetchAllByProperty(Class<T> clazz, String property, Collection<String> values, boolean ignoreCase) {
+		// Requested values by their matching key, so results can be keyed by every exact value that was requested
+		Map<String, List<String>> requested = new HashMap<String, List<String>>();
+		for (String value : values) {
+			String key = ignoreCase ? value.toLowerCase() : value;
+			List<String> variants = requested.get(key);
+			if (variants == null) {
+				variants = new ArrayList<String>();
+				requested.put(key, variants);
+			}
+			if (!variants.contains(value)) {
+				variants.add(value);
+			}
+		}
 
+		Map<String, T> existing = new HashMap<String, T>();
+		List<String> batch = new ArrayList<String>(new LinkedHashSet<String>(values));
+
+		for (int from = 0; from < batch.size(); from += FETCH_BATCH_SIZE) {
+			List<String> chunk = batch.subList(from, Math.min(from + FETCH_BATCH_SIZE, batch.size()));
+			List<T> results = getCurrentSession().createCriteria(clazz).add(Restrictions.in(property, chunk)).list();
+
+			for (T obj : results) {
+				String identifier = getIdentifier(obj);
+				List<String> variants = identifier != null ? requested.get(ignoreCase ? identifier.toLowerCase() : identifier) : null;
+				if (variants != null) {
+					for (String value : variants) {
+						existing.put(value, obj);
+					}
+				}
+			}
+		}
+		return existing;
+	}
+
+	/**
+	 * Convenience method to fetch objects by UUID in batches. UUIDs are matched exactly.
+	 * @param clazz the object class
+	 * @param uuids the UUIDs
+	 * @return the map of UUIDs to existing objects
+	 */
+	protected Map<String, T> fetchAllByUuid(Class<T> clazz, Collection<String> uuids) {
+		return fetchAllByProperty(clazz, "uuid", uuids, false);
+	}
+
+	/**
+	 * Gets the alternate match index of this handler from the install scope of the current thread
+	 * @return the index or null if this handler isn't indexed or no scope is open
+	 */
+	protected ObjectIndex<T> getAlternateIndex() {
+		InstallScope scope = InstallScope.current();
+		if (scope != null && this instanceof IndexedDeployHandler) {
+			return scope.getIndex((IndexedDeployHandler<T>) this);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the current hibernate session while taking care of the hibernate 3 and 4 differences.
+	 *
+	 * @return the current hibernate session.
+	 */
+	protected org.hibernate.Session getCurrentSession() {
+		try {
+			return sessionFactory.getCurrentSession();
+		}
+		catch (NoSuchMethodError ex) {
+			try {
+				Method method = sessionFactory.getClass().getMethod("getCurrentSession", null);
+				return (org.hibernate.Session)method.invoke(sessionFactory, null);
+			}
+			catch (Exception e) {
+				throw new RuntimeException("Failed to get the current hibernate session", e);
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.openmrs.OpenmrsObject;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Interface for handlers which can fetch many objects by their primary identifiers at once. Objects of handlers which
+ * don't implement this are fetched one at a time.
+ */
+public interface BatchFetchingDeployHandler<T extends OpenmrsObject> extends ObjectDeployHandler<T> {
+
+	/**
+	 * Fetches all objects with the given primary identifiers, ideally with as few queries as possible
+	 * @param identifiers the identifiers
+	 * @return the map of identifiers to existing objects (identifiers with no existing object are omitted)
+	 */
+	Map<String, T> fetchAll(Collection<String> identifiers);
+}
@@ -0,0 +1,262 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.openmrs.OpenmrsObject;
+import org.openmrs.Retireable;
+import org.openmrs.Voidable;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges incoming child objects (e.g. concept names) into the existing children of an object. Existing children are
+ * indexed by UUID once, so merging is linear in the size of both collections. Children which wouldn't be changed are
+ * left alone, so that Hibernate doesn't see them as dirty.
+ *
+ * Children can have children of their own (e.g. the states of program workflows), which are merged by a merger added
+ * with {@link #addChildren(ChildAccessor, CollectionMerger)}. Each level has it's own exclude fields, and removing a
+ * child also removes all of it's descendants.
+ */
+public class CollectionMerger<E extends OpenmrsObject> {
+
+	/**
+	 * Accessor for a collection of children of an object
+	 */
+	public interface ChildAccessor<P, C extends OpenmrsObject> {
+
+		/**
+		 * Gets the children of the given object
+		 * @param parent the object
+		 * @return the children
+		 */
+		Collection<C> getChildren(P parent);
+	}
+
+	private final Set<String> excludeFields;
+
+	private final List<ChildLevel<E, ?>> childLevels = new ArrayList<ChildLevel<E, ?>>();
+
+	/**
+	 * Creates a new merger
+	 * @param excludeFields the names of child fields to be excluded
+	 */
+	public CollectionMerger(Set<String> excludeFields) {
+		this.excludeFields = excludeFields;
+	}
+
+	/**
+	 * Adds a collection of children of each child which should be merged as well. Child fields which hold these
+	 * collections should be excluded from this merger.
+	 * @param accessor the accessor for the collection
+	 * @param merger the merger for the collection
+	 * @return this merger
+	 */
+	public <C extends OpenmrsObject> CollectionMerger<E> addChildren(ChildAccessor<E, C> accessor, CollectionMerger<C> merger) {
+		childLevels.add(new ChildLevel<E, C>(accessor, merger));
+		return this;
+	}
+
+	/**
+	 * Merges the incoming children into the existing children. Matched children are overwritten if they differ,
+	 * unmatched incoming children are added, and unmatched existing children are removed.
+	 * @param existing the existing children
+	 * @param incoming the incoming children
+	 * @return the number of existing children and descendants that were changed, added or removed
+	 */
+	public int merge(Collection<E> existing, Collection<E> incoming) {
+		Map<String, E> unmatched = index(existing);
+		List<E> toAdd = new ArrayList<E>();
+		int changes = 0;
+
+		for (E incomingItem : incoming) {
+			E existingItem = unmatched.remove(incomingItem.getUuid());
+			if (existingItem == null) {
+				toAdd.add(incomingItem);
+				continue;
+			}
+
+			if (ObjectUtils.differs(incomingItem, existingItem, excludeFields)) {
+				ObjectUtils.overwrite(incomingItem, existingItem, excludeFields);
+				changes++;
+			}
+
+			for (ChildLevel<E, ?> childLevel : childLevels) {
+				changes += childLevel.merge(existingItem, incomingItem);
+			}
+		}
+
+		if (!unmatched.isEmpty()) {
+			for (Iterator<E> iter = existing.iterator(); iter.hasNext(); ) {
+				E existingItem = iter.next();
+				if (unmatched.containsKey(existingItem.getUuid())) {
+					changes += removeTree(existingItem, iter);
+				}
+			}
+		}
+
+		existing.addAll(toAdd);
+		return changes + toAdd.size();
+	}
+
+	/**
+	 * Checks whether merging the incoming children into the existing children would change them
+	 * @param existing the existing children
+	 * @param incoming the incoming children
+	 * @return true if the existing children would be changed
+	 */
+	public boolean differs(Collection<E> existing, Collection<E> incoming) {
+		Map<String, E> unmatched = index(existing);
+
+		for (E incomingItem : incoming) {
+			E existingItem = unmatched.remove(incomingItem.getUuid());
+			if (existingItem == null || ObjectUtils.differs(incomingItem, existingItem, excludeFields)) {
+				return true;
+			}
+
+			for (ChildLevel<E, ?> childLevel : childLevels) {
+				if (childLevel.differs(existingItem, incomingItem)) {
+					return true;
+				}
+			}
+		}
+
+		for (E existingItem : unmatched.values()) {
+			if (!isRemoved(existingItem)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all existing children and their descendants which haven't already been removed
+	 * @param existing the existing children
+	 * @return the number of children and descendants that were removed
+	 */
+	public int removeAll(Collection<E> existing) {
+		int changes = 0;
+		for (Iterator<E> iter = existing.iterator(); iter.hasNext(); ) {
+			changes += removeTree(iter.next(), iter);
+		}
+		return changes;
+	}
+
+	/**
+	 * Removes an existing child after first removing it's descendants, unless it has already been removed
+	 * @param existingItem the existing child
+	 * @param iter the iterator of the existing collection, positioned at the child
+	 * @return the number of children and descendants that were removed
+	 */
+	protected int removeTree(E existingItem, Iterator<E> iter) {
+		if (isRemoved(existingItem)) {
+			return 0;
+		}
+
+		int changes = 0;
+		for (ChildLevel<E, ?> childLevel : childLevels) {
+			changes += childLevel.removeAll(existingItem);
+		}
+
+		remove(existingItem, iter);
+		return changes + 1;
+	}
+
+	/**
+	 * Removes an existing child which has no incoming match. Voidable and retireable children are voided or retired,
+	 * and other children are removed from the collection.
+	 * @param existingItem the existing child
+	 * @param iter the iterator of the existing collection, positioned at the child
+	 */
+	protected void remove(E existingItem, Iterator<E> iter) {
+		if (existingItem instanceof Voidable) {
+			Voidable voidable = (Voidable) existingItem;
+			voidable.setVoided(true);
+			voidable.setDateVoided(new Date());
+			voidable.setVoidReason("metadata deploy");
+			voidable.setVoidedBy(Context.getAuthenticatedUser());
+		}
+		else if (existingItem instanceof Retireable) {
+			Retireable retireable = (Retireable) existingItem;
+			retireable.setRetired(true);
+			retireable.setDateRetired(new Date());
+			retireable.setRetireReason("metadata deploy");
+			retireable.setRetiredBy(Context.getAuthenticatedUser());
+		}
+		else {
+			iter.remove();
+		}
+	}
+
+	/**
+	 * Checks whether an existing child has already been voided or retired
+	 * @param existingItem the existing child
+	 * @return true if child is voided or retired
+	 */
+	protected static boolean isRemoved(OpenmrsObject existingItem) {
+		return (existingItem instanceof Voidable && ((Voidable) existingItem).isVoided())
+				|| (existingItem instanceof Retireable && ((Retireable) existingItem).isRetired());
+	}
+
+	/**
+	 * Indexes a collection of children by UUID
+	 * @param items the children
+	 * @return the map of UUIDs to children
+	 */
+	protected static <E extends OpenmrsObject> Map<String, E> index(Collection<E> items) {
+		Map<String, E> index = new HashMap<String, E>(Math.max(16, items.size() * 2));
+		for (E item : items) {
+			if (item.getUuid() != null) {
+				index.put(item.getUuid(), item);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * A collection of children of each child, and the merger for that collection
+	 */
+	private static class ChildLevel<P, C extends OpenmrsObject> {
+
+		private final ChildAccessor<P, C> accessor;
+
+		private final CollectionMerger<C> merger;
+
+		public ChildLevel(ChildAccessor<P, C> accessor, CollectionMerger<C> merger) {
+			this.accessor = accessor;
+			this.merger = merger;
+		}
+
+		public int merge(P existing, P incoming) {
+			return merger.merge(accessor.getChildren(existing), accessor.getChildren(incoming));
+		}
+
+		public boolean differs(P existing, P incoming) {
+			return merger.differs(accessor.getChildren(existing), accessor.getChildren(incoming));
+		}
+
+		public int removeAll(P existing) {
+			return merger.removeAll(accessor.getChildren(existing));
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.openmrs.OpenmrsObject;
+
+import java.util.Collection;
+
+/**
+ * Interface for handlers whose alternate matches can be looked up in an index of all existing objects, rather than
+ * being queried for one incoming object at a time
+ */
+public interface IndexedDeployHandler<T extends OpenmrsObject> extends ObjectDeployHandler<T> {
+
+	/**
+	 * Fetches all existing objects which could be alternate matches, ideally with a single query. Objects should be in
+	 * the same order as the results of the query used when not indexing, as only the first object for each key is
+	 * indexed.
+	 * @return the objects
+	 */
+	Collection<T> fetchAlternateCandidates();
+
+	/**
+	 * Gets the key on which an object is matched to an alternate existing object (e.g. its name)
+	 * @param obj the object
+	 * @return the key or null if object can't be matched
+	 */
+	String getAlternateKey(T obj);
+}
@@ -0,0 +1,210 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.openmrs.OpenmrsObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of objects fetched by identifier whilst bundles are being installed, so that objects which are referenced
+ * many times (e.g. location tags) are only fetched once. A scope also holds the alternate match indexes of handlers
+ * which support them. A scope belongs to a single thread and it's Hibernate
+ * session, so it must be cleared whenever that session is cleared.
+ *
+ * Scopes can be nested, in which case the inner scope is the same as the outer scope and only closing the outer scope
+ * ends it.
+ */
+public class InstallScope {
+
+	private static final ThreadLocal<InstallScope> current = new ThreadLocal<InstallScope>();
+
+	private Map<ObjectDeployHandler<?>, Map<String, OpenmrsObject>> objects = new HashMap<ObjectDeployHandler<?>, Map<String, OpenmrsObject>>();
+
+	private Map<ObjectDeployHandler<?>, ObjectIndex<?>> indexes = new HashMap<ObjectDeployHandler<?>, ObjectIndex<?>>();
+
+	private int depth = 0;
+
+	private int hits = 0;
+
+	private int misses = 0;
+
+	/**
+	 * Opens a scope on the current thread, or re-enters the scope which is already open
+	 * @return the scope
+	 */
+	public static InstallScope open() {
+		InstallScope scope = current.get();
+		if (scope == null) {
+			scope = new InstallScope();
+			current.set(scope);
+		}
+		scope.depth++;
+		return scope;
+	}
+
+	/**
+	 * Gets the scope which is open on the current thread
+	 * @return the scope or null if no scope is open
+	 */
+	public static InstallScope current() {
+		return current.get();
+	}
+
+	/**
+	 * Closes this scope, which ends it if this is the outermost open
+	 * @return true if scope has ended
+	 */
+	public boolean close() {
+		if (--depth > 0) {
+			return false;
+		}
+
+		current.remove();
+		objects.clear();
+		indexes.clear();
+		return true;
+	}
+
+	/**
+	 * Gets a cached object
+	 * @param handler the handler of the object class
+	 * @param identifier the object identifier
+	 * @return the object or null if it isn't cached
+	 */
+	public <T extends OpenmrsObject> T get(ObjectDeployHandler<T> handler, String identifier) {
+		Map<String, OpenmrsObject> handlerObjects = objects.get(handler);
+		T obj = handlerObjects != null ? (T) handlerObjects.get(identifier) : null;
+
+		if (obj != null) {
+			hits++;
+		}
+		else {
+			misses++;
+		}
+		return obj;
+	}
+
+	/**
+	 * Caches an object
+	 * @param handler the handler of the object class
+	 * @param identifier the object identifier
+	 * @param obj the object
+	 */
+	public <T extends OpenmrsObject> void put(ObjectDeployHandler<T> handler, String identifier, T obj) {
+		Map<String, OpenmrsObject> handlerObjects = objects.get(handler);
+		if (handlerObjects == null) {
+			handlerObjects = new HashMap<String, OpenmrsObject>();
+			objects.put(handler, handlerObjects);
+		}
+		handlerObjects.put(identifier, obj);
+	}
+
+	/**
+	 * Removes a cached object, e.g. because it's being saved or uninstalled
+	 * @param handler the handler of the object class
+	 * @param identifier the object identifier
+	 */
+	public <T extends OpenmrsObject> void invalidate(ObjectDeployHandler<T> handler, String identifier) {
+		Map<String, OpenmrsObject> handlerObjects = objects.get(handler);
+		if (handlerObjects != null) {
+			handlerObjects.remove(identifier);
+		}
+	}
+
+	/**
+	 * Gets the alternate match index of a handler, creating it if necessary
+	 * @param handler the handler
+	 * @return the index
+	 */
+	public <T extends OpenmrsObject> ObjectIndex<T> getIndex(IndexedDeployHandler<T> handler) {
+		ObjectIndex<T> index = (ObjectIndex<T>) indexes.get(handler);
+		if (index == null) {
+			index = new ObjectIndex<T>(handler);
+			indexes.put(handler, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Updates the alternate match index of a handler (if it has one) with an object which has been saved
+	 * @param handler the handler of the object class
+	 * @param obj the object
+	 */
+	public <T extends OpenmrsObject> void indexSaved(ObjectDeployHandler<T> handler, T obj) {
+		ObjectIndex<T> index = (ObjectIndex<T>) indexes.get(handler);
+		if (index != null) {
+			index.put(obj);
+		}
+	}
+
+	/**
+	 * Queues an object which has been saved or changed outside of the deploy service, to be added to the alternate
+	 * match index of it's handler (if it has one)
+	 * @param handler the handler of the object class
+	 * @param obj the object
+	 */
+	public <T extends OpenmrsObject> void indexChanged(ObjectDeployHandler<T> handler, T obj) {
+		ObjectIndex<T> index = (ObjectIndex<T>) indexes.get(handler);
+		if (index != null) {
+			index.queue(obj);
+		}
+	}
+
+	/**
+	 * Discards all alternate match indexes, e.g. because objects have been committed by other sessions
+	 */
+	public void invalidateIndexes() {
+		for (ObjectIndex<?> index : indexes.values()) {
+			index.invalidate();
+		}
+	}
+
+	/**
+	 * Discards the alternate match index of a handler (if it has one), e.g. because an object has been uninstalled
+	 * @param handler the handler of the object class
+	 */
+	public void invalidateIndex(ObjectDeployHandler<?> handler) {
+		ObjectIndex<?> index = indexes.get(handler);
+		if (index != null) {
+			index.invalidate();
+		}
+	}
+
+	/**
+	 * Removes all cached objects and indexes, e.g. because the session has been cleared
+	 */
+	public void clear() {
+		objects.clear();
+		indexes.clear();
+	}
+
+	/**
+	 * Gets the number of lookups which found a cached object
+	 * @return the number of hits
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of lookups which didn't find a cached object
+	 * @return the number of misses
+	 */
+	public int getMisses() {
+		return misses;
+	}
+}
@@ -4,48 +4,207 @@ import org.openmrs.OpenmrsObject;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.APIException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Master bean that stores all the object deploy handlers
  * We don't wire these directly into the MetadataDeployServiceImpl because of the slowdown that occurs when autowiring beans into a proxied bean (ie, a service)
+ *
+ * Handlers are held in an immutable snapshot which is replaced as a whole whenever handlers are set, registered or
+ * unregistered, so lookups never lock and always see a consistent set of handlers.
  */
 @Component
-public class ObjectDeployHandlers {
+public class ObjectDeployHandlers implements ApplicationListener<ContextRefreshedEvent> {
 
-    private Map<Class<? extends OpenmrsObject>, ObjectDeployHandler> handlers;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>(new Snapshot(Collections.<Registration>emptyList()));
 
     /**
-     * Sets the object handlers, reorganising them into a map
+     * Sets the object handlers, reorganising them into a map. Handlers which were registered at runtime are kept.
      * @param handlers the handler components
      */
     @Autowired
     public void setHandlers(Set<ObjectDeployHandler> handlers) {
-        this.handlers = new HashMap<Class<? extends OpenmrsObject>, ObjectDeployHandler>();
-
+        List<Registration> autowired = new ArrayList<Registration>();
         for (ObjectDeployHandler handler : handlers) {
             Handler handlerAnnotation = handler.getClass().getAnnotation(Handler.class);
             if (handlerAnnotation != null) {
-                for (Class<?> supportedClass : handlerAnnotation.supports()) {
-                    if (OpenmrsObject.class.isAssignableFrom(supportedClass)) {
-                        if (!this.handlers.containsKey(supportedClass)
-                                || handlerAnnotation.order() < this.handlers.get(supportedClass).getClass().getAnnotation(Handler.class).order()) {
-                            this.handlers.put((Class<? extends OpenmrsObject>) supportedClass, handler);
-                        }
-                    }
-                    else {
-                        throw new APIException("Handler annotation specifies a non OpenmrsObject subclass");
-                    }
+                autowired.add(new Registration(handler, handlerAnnotation, true));
+            }
+        }
+
+        Snapshot current, next;
+        do {
+            current = snapshot.get();
+
+            List<Registration> registrations = new ArrayList<Registration>(autowired);
+            for (Registration registration : current.registrations) {
+                if (!registration.autowired) {
+                    registrations.add(registration);
                 }
             }
+            next = new Snapshot(registrations);
+        }
+        while (!snapshot.compareAndSet(current, next));
+    }
+
+    /**
+     * Registers a handler at runtime, e.g. from a module which has been started. A handler with a lower order replaces
+     * any existing handler for the same class.
+     * @param handler the handler which must be annotated with {@link Handler}
+     * @throws APIException if the handler isn't annotated or supports a non OpenmrsObject class
+     */
+    public void register(ObjectDeployHandler<?> handler) throws APIException {
+        Handler handlerAnnotation = handler.getClass().getAnnotation(Handler.class);
+        if (handlerAnnotation == null) {
+            throw new APIException("Handler class " + handler.getClass().getName() + " has no handler annotation");
         }
+
+        Registration registration = new Registration(handler, handlerAnnotation, false);
+
+        Snapshot current, next;
+        do {
+            current = snapshot.get();
+
+            List<Registration> registrations = new ArrayList<Registration>(current.registrations);
+            registrations.add(registration);
+            next = new Snapshot(registrations);
+        }
+        while (!snapshot.compareAndSet(current, next));
+    }
+
+    /**
+     * Unregisters a handler, e.g. because the module which provided it is being stopped
+     * @param handler the handler
+     * @return true if the handler was registered
+     */
+    public boolean unregister(ObjectDeployHandler<?> handler) {
+        Snapshot current, next;
+        do {
+            current = snapshot.get();
+
+            List<Registration> registrations = new ArrayList<Registration>();
+            for (Registration registration : current.registrations) {
+                if (registration.handler != handler) {
+                    registrations.add(registration);
+                }
+            }
+
+            if (registrations.size() == current.registrations.size()) {
+                return false;
+            }
+            next = new Snapshot(registrations);
+        }
+        while (!snapshot.compareAndSet(current, next));
+
+        return true;
     }
 
     public Map<Class<? extends OpenmrsObject>, ObjectDeployHandler> getHandlers() {
-        return handlers;
+        return snapshot.get().handlers;
+    }
+
+    /**
+     * Gets the handler for the given class. If there is no handler for the class itself, e.g. because it's a Hibernate
+     * proxy class, then the handler of the nearest superclass is used. Results are memoized so this is a constant time
+     * lookup for any class which has been seen before.
+     * @param clazz the object class
+     * @return the handler or null if no suitable handler exists
+     */
+    public <T extends OpenmrsObject> ObjectDeployHandler<T> getHandler(Class<? extends T> clazz) {
+        return snapshot.get().getHandler(clazz);
+    }
+
+    /**
+     * Discards resolved handlers when the application context is refreshed, as classes may have been reloaded
+     * @see ApplicationListener#onApplicationEvent(org.springframework.context.ApplicationEvent)
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        snapshot.get().resolved.clear();
+    }
+
+    /**
+     * A handler with the metadata of it's annotation, which is read once when the handler is registered
+     */
+    protected static class Registration {
+
+        private final ObjectDeployHandler handler;
+
+        private final int order;
+
+        private final Class<? extends OpenmrsObject>[] supports;
+
+        private final boolean autowired;
+
+        public Registration(ObjectDeployHandler handler, Handler handlerAnnotation, boolean autowired) {
+            for (Class<?> supportedClass : handlerAnnotation.supports()) {
+                if (!OpenmrsObject.class.isAssignableFrom(supportedClass)) {
+                    throw new APIException("Handler annotation specifies a non OpenmrsObject subclass");
+                }
+            }
+
+            this.handler = handler;
+            this.order = handlerAnnotation.order();
+            this.supports = (Class<? extends OpenmrsObject>[]) handlerAnnotation.supports();
+            this.autowired = autowired;
+        }
+    }
+
+    /**
+     * Immutable set of registered handlers, indexed by supported class
+     */
+    protected static class Snapshot {
+
+        private final List<Registration> registrations;
+
+        private final Map<Class<? extends OpenmrsObject>, ObjectDeployHandler> handlers;
+
+        // Handlers resolved for classes which don't have a handler of their own, e.g. proxies and subclasses
+        private final Map<Class<?>, ObjectDeployHandler> resolved = new ConcurrentHashMap<Class<?>, ObjectDeployHandler>();
+
+        public Snapshot(List<Registration> registrations) {
+            Map<Class<? extends OpenmrsObject>, ObjectDeployHandler> index = new HashMap<Class<? extends OpenmrsObject>, ObjectDeployHandler>();
+            Map<Class<?>, Integer> orders = new HashMap<Class<?>, Integer>();
+
+            for (Registration registration : registrations) {
+                for (Class<? extends OpenmrsObject> supportedClass : registration.supports) {
+                    Integer order = orders.get(supportedClass);
+                    if (order == null || registration.order < order) {
+                        index.put(supportedClass, registration.handler);
+                        orders.put(supportedClass, registration.order);
+                    }
+                }
+            }
+
+            this.registrations = Collections.unmodifiableList(registrations);
+            this.handlers = Collections.unmodifiableMap(index);
+        }
+
+        public <T extends OpenmrsObject> ObjectDeployHandler<T> getHandler(Class<? extends T> clazz) {
+            ObjectDeployHandler handler = resolved.get(clazz);
+
+            if (handler == null) {
+                for (Class<?> candidate = clazz; candidate != null && handler == null; candidate = candidate.getSuperclass()) {
+                    handler = handlers.get(candidate);
+                }
+
+                if (handler != null) {
+                    resolved.put(clazz, handler);
+                }
+            }
+
+            return handler;
+        }
     }
 }
@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.openmrs.OpenmrsObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of existing objects by their alternate key, which is built from a single query the first time it's used and
+ * then kept up to date as objects are saved. Like the install scope which owns it, an index belongs to a single thread
+ * and it's Hibernate session.
+ *
+ * Objects saved through the deploy service are added straight away. Objects saved or changed by other means (e.g.
+ * directly through the OpenMRS services) are queued by a Hibernate interceptor as they are saved or flushed, and added
+ * when the index is next used. The index is therefore complete for the session, and a miss means there is no match.
+ * Where several objects have the same key, the first candidate is indexed, like the first result of the query which
+ * the index replaces.
+ */
+public class ObjectIndex<T extends OpenmrsObject> {
+
+	private final IndexedDeployHandler<T> handler;
+
+	private Map<String, T> objects;
+
+	private List<T> queued = new ArrayList<T>();
+
+	/**
+	 * Creates a new index which will be built when first used
+	 * @param handler the handler
+	 */
+	public ObjectIndex(IndexedDeployHandler<T> handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * Gets the object with the given key
+	 * @param key the alternate key
+	 * @return the object or null
+	 */
+	public T get(String key) {
+		if (key == null) {
+			return null;
+		}
+
+		build();
+
+		for (T obj : queued) {
+			put(obj);
+		}
+		queued.clear();
+
+		// Key is checked again as object may have been changed since it was indexed
+		T obj = objects.get(key);
+		return obj != null && key.equals(handler.getAlternateKey(obj)) ? obj : null;
+	}
+
+	/**
+	 * Adds or updates an object which has been saved. Nothing needs to be done if the index hasn't been built yet, as
+	 * building it will query the saved object. An object doesn't replace a different indexed object with the same key.
+	 * @param obj the object
+	 */
+	public void put(T obj) {
+		if (objects != null) {
+			String key = handler.getAlternateKey(obj);
+			if (key != null) {
+				T indexed = objects.get(key);
+				if (indexed == null || indexed == obj || !key.equals(handler.getAlternateKey(indexed))) {
+					objects.put(key, obj);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues an object which has been saved or changed by other means, to be added when the index is next used. Keys
+	 * aren't read straight away as this may be called during a flush, when other objects mustn't be loaded.
+	 * @param obj the object
+	 */
+	public void queue(T obj) {
+		if (objects != null) {
+			queued.add(obj);
+		}
+	}
+
+	/**
+	 * Discards the index, e.g. because an object has been uninstalled, so that it's rebuilt when next used
+	 */
+	public void invalidate() {
+		objects = null;
+		queued.clear();
+	}
+
+	/**
+	 * Checks whether the index has been built
+	 * @return true if built
+	 */
+	public boolean isBuilt() {
+		return objects != null;
+	}
+
+	private void build() {
+		if (objects == null) {
+			objects = new HashMap<String, T>();
+			for (T obj : handler.fetchAlternateCandidates()) {
+				String key = handler.getAlternateKey(obj);
+				if (key != null && !objects.containsKey(key)) {
+					objects.put(key, obj);
+				}
+			}
+		}
+	}
+}
@@ -8,7 +8,9 @@ import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 
 /**
  * Handler that lets you fetch or create ConceptClasses
@@ -25,6 +27,14 @@ public class ConceptClassDeployHandler extends AbstractObjectDeployHandler<Conce
         return conceptService.getConceptClassByUuid(identifier);
     }
 
+    /**
+     * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+     */
+    @Override
+    public Map<String, ConceptClass> fetchAll(Collection<String> identifiers) {
+        return fetchAllByUuid(ConceptClass.class, identifiers);
+    }
+
     @Override
     public ConceptClass save(ConceptClass obj) {
         return conceptService.saveConceptClass(obj);
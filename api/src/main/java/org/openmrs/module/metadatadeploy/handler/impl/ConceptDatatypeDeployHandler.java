@@ -7,6 +7,9 @@ import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Handler that lets you fetch ConceptDatatype (but not edit them)
  */
@@ -22,6 +25,14 @@ public class ConceptDatatypeDeployHandler extends AbstractObjectDeployHandler<Co
         return conceptService.getConceptDatatypeByUuid(identifier);
     }
 
+    /**
+     * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+     */
+    @Override
+    public Map<String, ConceptDatatype> fetchAll(Collection<String> identifiers) {
+        return fetchAllByUuid(ConceptDatatype.class, identifiers);
+    }
+
     @Override
     public ConceptDatatype save(ConceptDatatype obj) {
         throw new UnsupportedOperationException("ConceptDatatype can only be fetched");
@@ -16,6 +16,7 @@ package org.openmrs.module.metadatadeploy.handler.impl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.proxy.HibernateProxy;
 import org.openmrs.Concept;
 import org.openmrs.ConceptDescription;
 import org.openmrs.ConceptMap;
@@ -27,9 +28,9 @@ import org.openmrs.Voidable;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.APIException;
 import org.openmrs.api.ConceptService;
-import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.ObjectUtils;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.CollectionMerger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
@@ -48,6 +49,8 @@ import java.util.Set;
 @Handler(supports = { Concept.class, ConceptNumeric.class })
 public class ConceptDeployHandler extends AbstractObjectDeployHandler<Concept> {
 
+    private static final Field namesField = resolveNamesField();
+
     private final Log log = LogFactory.getLog(this.getClass());
 
 	@Autowired
@@ -56,6 +59,12 @@ public class ConceptDeployHandler extends AbstractObjectDeployHandler<Concept> {
 
     private Map<Class, Set<String>> excludeFields;
 
+    private CollectionMerger<ConceptName> nameMerger;
+
+    private CollectionMerger<ConceptDescription> descriptionMerger;
+
+    private CollectionMerger<ConceptMap> mappingMerger;
+
     public ConceptDeployHandler() {
         super();
         excludeFields = new HashMap<Class, Set<String>>();
@@ -71,6 +80,10 @@ public class ConceptDeployHandler extends AbstractObjectDeployHandler<Concept> {
         excludeFields.put(ConceptMap.class, new HashSet<String>(Arrays.asList(
                 "conceptMapId", "concept"
         )));
+
+        nameMerger = new ConceptChildMerger<ConceptName>(excludeFields.get(ConceptName.class));
+        descriptionMerger = new ConceptChildMerger<ConceptDescription>(excludeFields.get(ConceptDescription.class));
+        mappingMerger = new ConceptChildMerger<ConceptMap>(excludeFields.get(ConceptMap.class));
     }
 
 	/**
@@ -78,20 +91,40 @@ public class ConceptDeployHandler extends AbstractObjectDeployHandler<Concept> {
 	 */
 	@Override
 	public Concept fetch(String identifier) {
-        Concept concept = conceptService.getConceptByUuid(identifier);
+        return toImplementation(conceptService.getConceptByUuid(identifier));
+	}
 
-        // the core API doesn't always return ConceptNumeric for numeric concepts
-        if (concept != null && concept.getDatatype().isNumeric() && !(concept instanceof ConceptNumeric)) {
-            ConceptNumeric conceptNumeric = Context.getConceptService().getConceptNumeric(concept.getId());
-            // If this was previously saved as a Concept, but is now being saved as a ConceptNumeric, allow for this
-            if (conceptNumeric == null) {
-                conceptNumeric = new ConceptNumeric(concept);
-            }
-            concept = conceptNumeric;
+    /**
+     * Fetches concepts in batches, with numeric concepts loaded by the same queries
+     *
+     * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+     */
+    @Override
+    public Map<String, Concept> fetchAll(Collection<String> identifiers) {
+        Map<String, Concept> existing = fetchAllByUuid(Concept.class, identifiers);
+        for (Map.Entry<String, Concept> entry : existing.entrySet()) {
+            entry.setValue(toImplementation(entry.getValue()));
         }
+        return existing;
+    }
 
+    /**
+     * Concepts are loaded polymorphically, but the core API can return a Concept proxy for a numeric concept if the
+     * concept was referenced before it was loaded. Unwrapping the proxy gives the ConceptNumeric without another query.
+     * @param concept the fetched concept (may be null)
+     * @return the concept, as a ConceptNumeric if it has a numeric datatype
+     */
+    protected Concept toImplementation(Concept concept) {
+        if (concept instanceof HibernateProxy) {
+            concept = (Concept) ((HibernateProxy) concept).getHibernateLazyInitializer().getImplementation();
+        }
+
+        // If this was previously saved as a Concept, but is now being saved as a ConceptNumeric, allow for this
+        if (concept != null && concept.getDatatype().isNumeric() && !(concept instanceof ConceptNumeric)) {
+            concept = new ConceptNumeric(concept);
+        }
         return concept;
-	}
+    }
 
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject)
@@ -112,65 +145,67 @@ public class ConceptDeployHandler extends AbstractObjectDeployHandler<Concept> {
     @Override
     public void overwrite(Concept incoming, Concept existing) {
         ObjectUtils.overwrite(incoming, existing, excludeFields.get(Concept.class));
-        mergeCollection(getConceptNamesCollection(existing), getConceptNamesCollection(incoming), excludeFields.get(ConceptName.class));
-        mergeCollection(existing.getDescriptions(), incoming.getDescriptions(), excludeFields.get(ConceptDescription.class));
-        mergeCollection(existing.getConceptMappings(), incoming.getConceptMappings(), excludeFields.get(ConceptMap.class));
+        nameMerger.merge(getConceptNamesCollection(existing), getConceptNamesCollection(incoming));
+        descriptionMerger.merge(existing.getDescriptions(), incoming.getDescriptions());
+        mappingMerger.merge(existing.getConceptMappings(), incoming.getConceptMappings());
     }
 
-    private <T extends OpenmrsObject> void mergeCollection(Collection<T> existing, Collection<T> incoming, Set<String> fieldsToExclude) {
-        Set<T> handled = new HashSet<T>();
-        Set<T> incomingToAdd = new HashSet<T>();
-        for (T incomingItem : incoming) {
-            T existingItem = findExisting(existing, incomingItem);
-            if (existingItem == null) {
-                incomingToAdd.add(incomingItem);
-            } else {
-                ObjectUtils.overwrite(incomingItem, existingItem, fieldsToExclude);
-                handled.add(existingItem);
-            }
+    /**
+     * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#differs(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+     */
+    @Override
+    public boolean differs(Concept incoming, Concept existing) {
+        return differs(incoming, existing, excludeFields.get(Concept.class))
+                || nameMerger.differs(getConceptNamesCollection(existing), getConceptNamesCollection(incoming))
+                || descriptionMerger.differs(existing.getDescriptions(), incoming.getDescriptions())
+                || mappingMerger.differs(existing.getConceptMappings(), incoming.getConceptMappings());
+    }
+
+    /**
+     * Merger for concept children which logs children that are removed rather than voided
+     */
+    private class ConceptChildMerger<T extends OpenmrsObject> extends CollectionMerger<T> {
+
+        public ConceptChildMerger(Set<String> excludeFields) {
+            super(excludeFields);
         }
 
-        for (Iterator<T> iter = existing.iterator(); iter.hasNext(); ) {
-            T existingItem = iter.next();
-            if (!handled.contains(existingItem)) {
-                if (existingItem instanceof Voidable || existingItem instanceof Retireable) {
-                    voidOrRetire(existingItem);
-                }
-                else {
-                    StringBuilder descr = new StringBuilder();
-                    Concept c;
-                    if (existingItem instanceof ConceptName) {
-                        ConceptName cn = (ConceptName) existingItem;
-                        c = cn.getConcept();
-                        descr.append("\"").append(cn.getName()).append("\" (name in ")
-                                .append(cn.getLocale())
-                                .append(" with type=").append(cn.getConceptNameType())
-                                .append(" and localePreferred=").append(cn.getLocalePreferred())
-                                .append(")");
-                    } else if (existingItem instanceof ConceptDescription) {
-                        ConceptDescription cd = (ConceptDescription) existingItem;
-                        c = cd.getConcept();
-                        descr.append("\"").append(cd.getDescription()).append("\" (description in ")
-                                .append(cd.getLocale()).append(")");
-                    } else {
-                        c = null;
-                        descr.append(existingItem)
-                                .append(" (")
-                                .append(existingItem.getClass().getSimpleName())
-                                .append(")");
-                    }
-                    if (c != null) {
-                        descr.append(" from concept ").append(c.getUuid());
-                    }
-                    log.info("Metadata Deploy is removing " + descr);
-                    iter.remove();
-                }
+        @Override
+        protected void remove(T existingItem, Iterator<T> iter) {
+            if (!(existingItem instanceof Voidable || existingItem instanceof Retireable)) {
+                log.info("Metadata Deploy is removing " + describe(existingItem));
             }
+            super.remove(existingItem, iter);
         }
+    }
 
-        for (T incomingItem : incomingToAdd) {
-            existing.add(incomingItem);
+    private String describe(OpenmrsObject existingItem) {
+        StringBuilder descr = new StringBuilder();
+        Concept c;
+        if (existingItem instanceof ConceptName) {
+            ConceptName cn = (ConceptName) existingItem;
+            c = cn.getConcept();
+            descr.append("\"").append(cn.getName()).append("\" (name in ")
+                    .append(cn.getLocale())
+                    .append(" with type=").append(cn.getConceptNameType())
+                    .append(" and localePreferred=").append(cn.getLocalePreferred())
+                    .append(")");
+        } else if (existingItem instanceof ConceptDescription) {
+            ConceptDescription cd = (ConceptDescription) existingItem;
+            c = cd.getConcept();
+            descr.append("\"").append(cd.getDescription()).append("\" (description in ")
+                    .append(cd.getLocale()).append(")");
+        } else {
+            c = null;
+            descr.append(existingItem)
+                    .append(" (")
+                    .append(existingItem.getClass().getSimpleName())
+                    .append(")");
+        }
+        if (c != null) {
+            descr.append(" from concept ").append(c.getUuid());
         }
+        return descr.toString();
     }
 
     /**
@@ -179,22 +214,32 @@ public class ConceptDeployHandler extends AbstractObjectDeployHandler<Concept> {
      * @return
      */
     private Collection<ConceptName>  getConceptNamesCollection(Concept concept) {
-        try {
-            Field names = Concept.class.getDeclaredField("names");
-            boolean previousFieldAccessibility = names.isAccessible();
-            names.setAccessible(true);
-            Collection<ConceptName> childCollection = (Collection<ConceptName>) names.get(concept);
-            names.setAccessible(previousFieldAccessibility);
-            return childCollection;
-        }
-        catch (NoSuchFieldException e) {
+        if (namesField == null) {
             throw new APIException("unaccessible getter method for concept.names");
         }
+        try {
+            return (Collection<ConceptName>) namesField.get(concept);
+        }
         catch (IllegalAccessException e) {
             throw new APIException("unaccessible getter method for concept.names");
         }
     }
 
+    /**
+     * Resolves the concept.names field once, so that it doesn't need looking up for every concept
+     * @return the field or null if it can't be accessed
+     */
+    private static Field resolveNamesField() {
+        try {
+            Field names = Concept.class.getDeclaredField("names");
+            names.setAccessible(true);
+            return names;
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
 
     /**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
@@ -7,6 +7,9 @@ import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Handler that lets you fetch ConceptMapType (but not edit them)
  */
@@ -22,6 +25,14 @@ public class ConceptMapTypeDeployHandler extends AbstractObjectDeployHandler<Con
         return conceptService.getConceptMapTypeByUuid(identifier);
     }
 
+    /**
+     * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+     */
+    @Override
+    public Map<String, ConceptMapType> fetchAll(Collection<String> identifiers) {
+        return fetchAllByUuid(ConceptMapType.class, identifiers);
+    }
+
     @Override
     public ConceptMapType save(ConceptMapType obj) {
         throw new UnsupportedOperationException("ConceptMapType can only be fetched (for now)");
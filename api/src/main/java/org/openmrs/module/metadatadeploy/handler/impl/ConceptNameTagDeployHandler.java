@@ -8,7 +8,9 @@ import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 
 /**
  * Deployment handler for concept name tags
@@ -28,6 +30,14 @@ public class ConceptNameTagDeployHandler extends AbstractObjectDeployHandler<Con
         return conceptService.getConceptNameTagByUuid(identifier);
     }
 
+    /**
+     * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+     */
+    @Override
+    public Map<String, ConceptNameTag> fetchAll(Collection<String> identifiers) {
+        return fetchAllByUuid(ConceptNameTag.class, identifiers);
+    }
+
     /**
      * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject)
      */
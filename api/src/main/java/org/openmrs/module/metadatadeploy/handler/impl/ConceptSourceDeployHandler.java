@@ -21,6 +21,9 @@ import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Deployment handler for concept sources
  */
@@ -39,6 +42,14 @@ public class ConceptSourceDeployHandler extends AbstractObjectDeployHandler<Conc
 		return conceptService.getConceptSourceByUuid(identifier);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, ConceptSource> fetchAll(Collection<String> identifiers) {
+		return fetchAllByUuid(ConceptSource.class, identifiers);
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject)
 	 */
@@ -21,6 +21,9 @@ import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Deployment handler for encounter roles
  */
@@ -39,6 +42,14 @@ public class EncounterRoleDeployHandler extends AbstractObjectDeployHandler<Enco
 		return encounterService.getEncounterRoleByUuid(uuid);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, EncounterRole> fetchAll(Collection<String> identifiers) {
+		return fetchAllByUuid(EncounterRole.class, identifiers);
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject)
 	 */
@@ -21,6 +21,9 @@ import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Deployment handler for forms
  */
@@ -39,6 +42,14 @@ public class FormDeployHandler extends AbstractObjectDeployHandler<Form> {
 		return formService.getFormByUuid(uuid);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, Form> fetchAll(Collection<String> identifiers) {
+		return fetchAllByUuid(Form.class, identifiers);
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
 	 */
@@ -14,18 +14,26 @@
 
 package org.openmrs.module.metadatadeploy.handler.impl;
 
+import org.hibernate.criterion.Order;
 import org.openmrs.FormResource;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.FormService;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ObjectIndex;
+import org.openmrs.util.OpenmrsUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Deployment handler for form resources
  */
 @Handler(supports = { FormResource.class })
-public class FormResourceDeployHandler extends AbstractObjectDeployHandler<FormResource> {
+public class FormResourceDeployHandler extends AbstractObjectDeployHandler<FormResource> implements IndexedDeployHandler<FormResource> {
 
 	@Autowired
 	@Qualifier("formService")
@@ -39,11 +47,24 @@ public class FormResourceDeployHandler extends AbstractObjectDeployHandler<FormR
 		return formService.getFormResourceByUuid(identifier);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, FormResource> fetchAll(Collection<String> identifiers) {
+		return fetchAllByUuid(FormResource.class, identifiers);
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject)
 	 */
 	@Override
 	public FormResource findAlternateMatch(FormResource obj) {
+		ObjectIndex<FormResource> index = getAlternateIndex();
+		if (index != null) {
+			return index.get(getAlternateKey(obj));
+		}
+
 		return formService.getFormResource(obj.getForm(), obj.getName());
 	}
 
@@ -65,6 +86,16 @@ public class FormResourceDeployHandler extends AbstractObjectDeployHandler<FormR
 		existing.setValue(incoming.getValue());
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#differs(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean differs(FormResource incoming, FormResource existing) {
+		// The value is transient and may not have been converted to a reference yet, so compare the values themselves
+		return differs(incoming, existing, Collections.singleton("valueReference"))
+				|| !OpenmrsUtil.nullSafeEquals(incoming.getValue(), existing.getValue());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
 	 * @param obj the object to uninstall
@@ -73,4 +104,24 @@ public class FormResourceDeployHandler extends AbstractObjectDeployHandler<FormR
 	public void uninstall(FormResource obj, String reason) {
 		formService.purgeFormResource(obj);
 	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler#fetchAlternateCandidates()
+	 */
+	@Override
+	public Collection<FormResource> fetchAlternateCandidates() {
+		return getCurrentSession().createCriteria(FormResource.class).addOrder(Order.asc("formResourceId")).list();
+	}
+
+	/**
+	 * Resources are matched on their form and their name, case-insensitively like the database query by name
+	 * @see org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler#getAlternateKey(org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public String getAlternateKey(FormResource obj) {
+		if (obj.getForm() == null || obj.getForm().getUuid() == null || obj.getName() == null) {
+			return null;
+		}
+		return obj.getForm().getUuid() + ":" + obj.getName().toLowerCase();
+	}
 }
\ No newline at end of file
@@ -18,11 +18,19 @@ import org.apache.commons.lang3.StringUtils;
 import org.openmrs.GlobalProperty;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.AdministrationService;
+import org.openmrs.module.metadatadeploy.ObjectUtils;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
 import org.openmrs.util.OpenmrsUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Deployment handler for global properties
  */
@@ -41,6 +49,14 @@ public class GlobalPropertyDeployHandler extends AbstractObjectDeployHandler<Glo
 		return obj.getProperty();
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#isIdentifierCaseSensitive()
+	 */
+	@Override
+	public boolean isIdentifierCaseSensitive() {
+		return false;
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#fetch(String)
 	 */
@@ -49,6 +65,14 @@ public class GlobalPropertyDeployHandler extends AbstractObjectDeployHandler<Glo
 		return adminService.getGlobalPropertyObject(identifier);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, GlobalProperty> fetchAll(Collection<String> identifiers) {
+		return fetchAllByProperty(GlobalProperty.class, "property", identifiers, !isIdentifierCaseSensitive());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
 	 */
@@ -88,7 +112,8 @@ public class GlobalPropertyDeployHandler extends AbstractObjectDeployHandler<Glo
 		// We keep the existing property value if the incoming property doesn't have a value and the datatypes match
 		boolean preserveValue = !hasValue(incoming) && datatypeMatches;
 
-		super.overwrite(incoming, existing);
+		// Global properties are identified by name, so the existing UUID is kept (and ignored by differs)
+		ObjectUtils.overwrite(incoming, existing, new HashSet<String>(Arrays.asList("uuid")));
 
 		// The value field won't have been copied as it is transient, so we need to explicitly set the value now
 		Object value = preserveValue ? existingValue : incoming.getValue();
@@ -97,6 +122,54 @@ public class GlobalPropertyDeployHandler extends AbstractObjectDeployHandler<Glo
 		}
 	}
 
+	/**
+	 * Global properties are identified by name, so a differing UUID alone isn't considered a change and isn't copied
+	 * by overwrite
+	 *
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#differs(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean differs(GlobalProperty incoming, GlobalProperty existing) {
+		boolean datatypeMatches = OpenmrsUtil.nullSafeEquals(incoming.getDatatypeClassname(), existing.getDatatypeClassname());
+
+		if (differs(incoming, existing, new HashSet<String>(Arrays.asList("uuid", "propertyValue")))) {
+			return true;
+		}
+
+		// Existing value is kept if the incoming property doesn't have a value (see overwrite)
+		boolean preserveValue = !hasValue(incoming) && datatypeMatches;
+		return !preserveValue && !OpenmrsUtil.nullSafeEquals(incoming.getValue(), existing.getValue());
+	}
+
+	/**
+	 * Sets the values of many global properties, creating any which don't exist. Existing properties are fetched with
+	 * as few queries as possible, and only those whose values have changed are saved. Changed properties are saved
+	 * one at a time through the administration service, so are authorized, validated and notify listeners as usual,
+	 * i.e. before the transaction commits.
+	 * @param values the map of property names to values
+	 * @return the properties which were changed or created
+	 */
+	public List<GlobalProperty> saveValues(Map<String, String> values) {
+		Map<String, GlobalProperty> existing = fetchAll(values.keySet());
+		List<GlobalProperty> changed = new ArrayList<GlobalProperty>();
+
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			GlobalProperty gp = existing.get(entry.getKey());
+
+			if (gp == null) {
+				gp = new GlobalProperty(entry.getKey());
+			}
+			else if (OpenmrsUtil.nullSafeEquals(gp.getPropertyValue(), entry.getValue())) {
+				continue;
+			}
+
+			gp.setPropertyValue(entry.getValue());
+			changed.add(adminService.saveGlobalProperty(gp));
+		}
+
+		return changed;
+	}
+
 	/**
 	 * Global properties don't really distinguish between blank and null values since the UI doesn't let a user
 	 * distinguish between the two. This method determines if a global property has a value.
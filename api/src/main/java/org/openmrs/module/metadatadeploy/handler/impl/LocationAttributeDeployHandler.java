@@ -5,9 +5,13 @@ import org.openmrs.LocationAttribute;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.LocationService;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.util.OpenmrsUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Map;
+
 @Handler(supports = { LocationAttribute.class })
 public class LocationAttributeDeployHandler extends AbstractObjectDeployHandler<LocationAttribute> {
 
@@ -20,6 +24,14 @@ public class LocationAttributeDeployHandler extends AbstractObjectDeployHandler<
         return locationService.getLocationAttributeByUuid(identifier);
     }
 
+    /**
+     * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+     */
+    @Override
+    public Map<String, LocationAttribute> fetchAll(Collection<String> identifiers) {
+        return fetchAllByUuid(LocationAttribute.class, identifiers);
+    }
+
     @Override
     public void overwrite(LocationAttribute incoming, LocationAttribute existing) {
 
@@ -31,6 +43,14 @@ public class LocationAttributeDeployHandler extends AbstractObjectDeployHandler<
         existing.setAttributeType(incoming.getAttributeType());
     }
 
+    @Override
+    public boolean differs(LocationAttribute incoming, LocationAttribute existing) {
+        // Only the value and attribute type are overwritten
+        return existing.getLocation() != incoming.getLocation()
+                || !OpenmrsUtil.nullSafeEquals(existing.getAttributeType(), incoming.getAttributeType())
+                || !OpenmrsUtil.nullSafeEquals(existing.getValue(), incoming.getValue());
+    }
+
     @Override
     public LocationAttribute save(LocationAttribute obj) {
         Location location = obj.getLocation();
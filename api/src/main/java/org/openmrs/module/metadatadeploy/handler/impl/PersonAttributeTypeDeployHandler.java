@@ -14,29 +14,29 @@
 
 package org.openmrs.module.metadatadeploy.handler.impl;
 
-import java.lang.reflect.Method;
-
-import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
 import org.openmrs.PersonAttributeType;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.PersonService;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ObjectIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Deployment handler for person attribute types
  */
 @Handler(supports = { PersonAttributeType.class })
-public class PersonAttributeTypeDeployHandler extends AbstractObjectDeployHandler<PersonAttributeType> {
+public class PersonAttributeTypeDeployHandler extends AbstractObjectDeployHandler<PersonAttributeType> implements IndexedDeployHandler<PersonAttributeType> {
 
 	@Autowired
 	@Qualifier("personService")
 	private PersonService personService;
 
-	@Autowired
-	private SessionFactory sessionFactory;
-
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#fetch(String)
 	 */
@@ -45,6 +45,14 @@ public class PersonAttributeTypeDeployHandler extends AbstractObjectDeployHandle
 		return personService.getPersonAttributeTypeByUuid(uuid);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, PersonAttributeType> fetchAll(Collection<String> identifiers) {
+		return fetchAllByUuid(PersonAttributeType.class, identifiers);
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
 	 */
@@ -63,6 +71,11 @@ public class PersonAttributeTypeDeployHandler extends AbstractObjectDeployHandle
 	 */
 	@Override
 	public PersonAttributeType findAlternateMatch(PersonAttributeType incoming) {
+		ObjectIndex<PersonAttributeType> index = getAlternateIndex();
+		if (index != null) {
+			return index.get(getAlternateKey(incoming));
+		}
+
 		return personService.getPersonAttributeTypeByName(incoming.getName());
 	}
 
@@ -74,24 +87,22 @@ public class PersonAttributeTypeDeployHandler extends AbstractObjectDeployHandle
 	public void uninstall(PersonAttributeType obj, String reason) {
 		personService.retirePersonAttributeType(obj, reason);
 	}
-	
+
 	/**
-	 * Gets the current hibernate session while taking care of the hibernate 3 and 4 differences.
-	 * 
-	 * @return the current hibernate session.
+	 * @see org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler#fetchAlternateCandidates()
 	 */
-	private org.hibernate.Session getCurrentSession() {
-		try {
-			return sessionFactory.getCurrentSession();
-		}
-		catch (NoSuchMethodError ex) {
-			try {
-				Method method = sessionFactory.getClass().getMethod("getCurrentSession", null);
-				return (org.hibernate.Session)method.invoke(sessionFactory, null);
-			}
-			catch (Exception e) {
-				throw new RuntimeException("Failed to get the current hibernate session", e);
-			}
-		}
+	@Override
+	public Collection<PersonAttributeType> fetchAlternateCandidates() {
+		// Ordered like the unordered query by name, rather than by sort weight like getAllPersonAttributeTypes
+		return getCurrentSession().createCriteria(PersonAttributeType.class).addOrder(Order.asc("personAttributeTypeId")).list();
+	}
+
+	/**
+	 * Attribute types are matched on their name, case-insensitively like the database query by name
+	 * @see org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler#getAlternateKey(org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public String getAlternateKey(PersonAttributeType obj) {
+		return obj.getName() != null ? obj.getName().toLowerCase() : null;
 	}
 }
\ No newline at end of file
@@ -19,16 +19,20 @@ import org.openmrs.annotation.Handler;
 import org.openmrs.api.UserService;
 import org.openmrs.module.metadatadeploy.ObjectUtils;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ObjectIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
 
 /**
  * Deployment handler for privileges
  */
 @Handler(supports = { Privilege.class })
-public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privilege> {
+public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privilege> implements IndexedDeployHandler<Privilege> {
 
 	@Autowired
 	@Qualifier("userService")
@@ -42,6 +46,14 @@ public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privileg
 		return obj.getPrivilege();
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#isIdentifierCaseSensitive()
+	 */
+	@Override
+	public boolean isIdentifierCaseSensitive() {
+		return false;
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#fetch(String)
 	 */
@@ -50,6 +62,14 @@ public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privileg
 		return userService.getPrivilege(identifier);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, Privilege> fetchAll(Collection<String> identifiers) {
+		return fetchAllByProperty(Privilege.class, "privilege", identifiers, !isIdentifierCaseSensitive());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
 	 */
@@ -63,6 +83,11 @@ public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privileg
 	 */
 	@Override
 	public Privilege findAlternateMatch(Privilege incoming) {
+		ObjectIndex<Privilege> index = getAlternateIndex();
+		if (index != null) {
+			return index.get(getAlternateKey(incoming));
+		}
+
 		return userService.getPrivilegeByUuid(incoming.getUuid());
 	}
 
@@ -83,4 +108,29 @@ public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privileg
 		// Do per-field copy of incoming to existing, excluding UUID
 		ObjectUtils.overwrite(incoming, existing, Collections.singleton("uuid"));
 	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#differs(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean differs(Privilege incoming, Privilege existing) {
+		return differs(incoming, existing, Collections.singleton("uuid"));
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler#fetchAlternateCandidates()
+	 */
+	@Override
+	public Collection<Privilege> fetchAlternateCandidates() {
+		return userService.getAllPrivileges();
+	}
+
+	/**
+	 * Privileges are matched on their UUID, as their primary identifier is their name
+	 * @see org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler#getAlternateKey(org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public String getAlternateKey(Privilege obj) {
+		return obj.getUuid();
+	}
 }
\ No newline at end of file
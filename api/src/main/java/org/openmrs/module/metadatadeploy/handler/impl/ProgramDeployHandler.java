@@ -14,7 +14,6 @@
 
 package org.openmrs.module.metadatadeploy.handler.impl;
 
-import org.openmrs.OpenmrsObject;
 import org.openmrs.Program;
 import org.openmrs.ProgramWorkflow;
 import org.openmrs.ProgramWorkflowState;
@@ -23,6 +22,9 @@ import org.openmrs.api.ProgramWorkflowService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.ObjectUtils;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.CollectionMerger;
+import org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ObjectIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
@@ -31,7 +33,6 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,7 +40,7 @@ import java.util.Set;
  * Deployment handler for programs
  */
 @Handler(supports = { Program.class })
-public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> {
+public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> implements IndexedDeployHandler<Program> {
 
 	@Autowired
 	@Qualifier("programWorkflowService")
@@ -47,6 +48,8 @@ public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> {
 
 	private Map<Class, Set<String>> excludeFields;
 
+	private CollectionMerger<ProgramWorkflow> workflowMerger;
+
 	public ProgramDeployHandler() {
 		super();
 		excludeFields = new HashMap<Class, Set<String>>();
@@ -59,6 +62,14 @@ public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> {
 		excludeFields.put(ProgramWorkflowState.class, new HashSet<String>(Arrays.asList(
 				"programWorkflowStateId", "programWorkflow"
 		)));
+
+		workflowMerger = new CollectionMerger<ProgramWorkflow>(excludeFields.get(ProgramWorkflow.class));
+		workflowMerger.addChildren(new CollectionMerger.ChildAccessor<ProgramWorkflow, ProgramWorkflowState>() {
+			@Override
+			public Collection<ProgramWorkflowState> getChildren(ProgramWorkflow workflow) {
+				return workflow.getStates();
+			}
+		}, new CollectionMerger<ProgramWorkflowState>(excludeFields.get(ProgramWorkflowState.class)));
 	}
 
 	/**
@@ -69,6 +80,14 @@ public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> {
 		return programService.getProgramByUuid(uuid);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, Program> fetchAll(Collection<String> identifiers) {
+		return fetchAllByUuid(Program.class, identifiers);
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
 	 */
@@ -82,6 +101,11 @@ public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> {
 	 */
 	@Override
 	public Program findAlternateMatch(Program incoming) {
+		ObjectIndex<Program> index = getAlternateIndex();
+		if (index != null) {
+			return index.get(getAlternateKey(incoming));
+		}
+
 		// In 1.9.x getProgramByName incorrectly looks at concept name (TRUNK-3504)
 		for (Program p : programService.getAllPrograms(true)) {
 			if (p.getName().equals(incoming.getName())) {
@@ -116,42 +140,32 @@ public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> {
 	@Override
 	public void overwrite(Program incoming, Program existing) {
 		ObjectUtils.overwrite(incoming, existing, excludeFields.get(Program.class));
-		mergeCollection(existing.getAllWorkflows(), incoming.getAllWorkflows(), excludeFields.get(ProgramWorkflow.class));
+		workflowMerger.merge(existing.getAllWorkflows(), incoming.getAllWorkflows());
 	}
 
-	private <T extends OpenmrsObject> void mergeCollection(Collection<T> existing, Collection<T> incoming, Set<String> fieldsToExclude) {
-
-		Set<T> handled = new HashSet<T>();
-		Set<T> incomingToAdd = new HashSet<T>();
-		for (T incomingItem : incoming) {
-			T existingItem = findExisting(existing, incomingItem);
-			if (existingItem == null) {
-				incomingToAdd.add(incomingItem);
-			} else {
-				ObjectUtils.overwrite(incomingItem, existingItem, fieldsToExclude);
-				if (incomingItem instanceof ProgramWorkflow) {
-					mergeCollection(((ProgramWorkflow) existingItem).getStates(), ((ProgramWorkflow) incomingItem).getStates(), excludeFields.get(ProgramWorkflowState.class));
-				}
-
-				handled.add(existingItem);
-			}
-		}
-
-		for (Iterator<T> iter = existing.iterator(); iter.hasNext(); ) {
-			T existingItem = iter.next();
-			if (!handled.contains(existingItem)) {
-				if (existingItem instanceof ProgramWorkflow) {
-					for (ProgramWorkflowState state : ((ProgramWorkflow) existingItem).getStates()) {
-						voidOrRetire(state);
-					}
-				}
-				voidOrRetire(existingItem);
-			}
-		}
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#differs(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean differs(Program incoming, Program existing) {
+		return differs(incoming, existing, excludeFields.get(Program.class))
+				|| workflowMerger.differs(existing.getAllWorkflows(), incoming.getAllWorkflows());
+	}
 
-		for (T incomingItem : incomingToAdd) {
-			existing.add(incomingItem);
-		}
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler#fetchAlternateCandidates()
+	 */
+	@Override
+	public Collection<Program> fetchAlternateCandidates() {
+		return programService.getAllPrograms(true);
 	}
 
+	/**
+	 * Programs are matched on their exact name
+	 * @see org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler#getAlternateKey(org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public String getAlternateKey(Program obj) {
+		return obj.getName();
+	}
 }
\ No newline at end of file
@@ -19,17 +19,21 @@ import org.openmrs.annotation.Handler;
 import org.openmrs.api.UserService;
 import org.openmrs.module.metadatadeploy.ObjectUtils;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ObjectIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 
 /**
  * Deployment handler for roles
  */
 @Handler(supports = { Role.class })
-public class RoleDeployHandler extends AbstractObjectDeployHandler<Role> {
+public class RoleDeployHandler extends AbstractObjectDeployHandler<Role> implements IndexedDeployHandler<Role> {
 
 	@Autowired
 	@Qualifier("userService")
@@ -43,6 +47,14 @@ public class RoleDeployHandler extends AbstractObjectDeployHandler<Role> {
 		return obj.getRole();
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#isIdentifierCaseSensitive()
+	 */
+	@Override
+	public boolean isIdentifierCaseSensitive() {
+		return false;
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#fetch(String)
 	 */
@@ -51,6 +63,14 @@ public class RoleDeployHandler extends AbstractObjectDeployHandler<Role> {
 		return userService.getRole(identifier);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BatchFetchingDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, Role> fetchAll(Collection<String> identifiers) {
+		return fetchAllByProperty(Role.class, "role", identifiers, !isIdentifierCaseSensitive());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
 	 */
@@ -64,6 +84,11 @@ public class RoleDeployHandler extends AbstractObjectDeployHandler<Role> {
 	 */
 	@Override
 	public Role findAlternateMatch(Role incoming) {
+		ObjectIndex<Role> index = getAlternateIndex();
+		if (index != null) {
+			return index.get(getAlternateKey(incoming));
+		}
+
 		return userService.getRoleByUuid(incoming.getUuid());
 	}
 
@@ -84,4 +109,29 @@ public class RoleDeployHandler extends AbstractObjectDeployHandler<Role> {
 		// Do per-field copy of incoming to existing, excluding UUID
 		ObjectUtils.overwrite(incoming, existing, new HashSet<String>(Arrays.asList("childRoles", "uuid")));
 	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#differs(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean differs(Role incoming, Role existing) {
+		return differs(incoming, existing, new HashSet<String>(Arrays.asList("childRoles", "uuid")));
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler#fetchAlternateCandidates()
+	 */
+	@Override
+	public Collection<Role> fetchAlternateCandidates() {
+		return userService.getAllRoles();
+	}
+
+	/**
+	 * Roles are matched on their UUID, as their primary identifier is their name
+	 * @see org.openmrs.module.metadatadeploy.handler.IndexedDeployHandler#getAlternateKey(org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public String getAlternateKey(Role obj) {
+		return obj.getUuid();
+	}
 }
\ No newline at end of file
@@ -17,17 +17,46 @@ package org.openmrs.module.metadatadeploy.source;
 import au.com.bytecode.opencsv.CSVReader;
 import org.apache.commons.lang3.StringUtils;
 import org.openmrs.OpenmrsObject;
+import org.openmrs.module.metadatadeploy.ResourceUtils;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Abstract base class for object sources from CSV resources.
+ * Abstract base class for object sources from CSV resources. Resources are read as UTF-8, and are decoded directly
+ * from a memory mapped file where possible (see {@link ResourceUtils}).
+ *
+ * Optionally lines can be read ahead on a background thread, so that reading and decoding the resource overlaps with
+ * whatever is done with each object. Lines are still parsed into objects on the calling thread, as parsing often
+ * fetches other objects using the calling thread's session. The background thread is only started by the first fetch,
+ * and stops once the source is shut down, so callers which might stop fetching early should shut down the source in a
+ * finally block.
  */
 public abstract class AbstractCsvResourceSource<T extends OpenmrsObject> implements ObjectSource<T> {
 
-	private CSVReader reader;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// How long the read-ahead thread waits for space in the queue before checking if the source has been shut down
+	private static final long READ_AHEAD_TIMEOUT_MS = 100;
+
+	// Marks the end of the resource in the read-ahead queue
+	private static final String[] END_OF_LINES = new String[0];
+
+	private final String csvFile;
+
+	private final CSVReader reader;
+
+	private BlockingQueue<String[]> readAheadQueue;
+
+	private Thread readAheadThread;
+
+	private volatile Exception readAheadError;
+
+	private volatile boolean closed = false;
 
 	/**
 	 * Constructs a new source
@@ -36,13 +65,33 @@ public abstract class AbstractCsvResourceSource<T extends OpenmrsObject> impleme
 	 * @throws IOException if an error occurs
 	 */
 	public AbstractCsvResourceSource(String csvFile, boolean hasHeader) throws IOException {
-		InputStream in = getClass().getClassLoader().getResourceAsStream(csvFile);
-		reader = new CSVReader(new InputStreamReader(in));
+		this(csvFile, hasHeader, 0);
+	}
+
+	/**
+	 * Constructs a new source which optionally reads lines ahead on a background thread
+	 * @param csvFile the resource file path
+	 * @param hasHeader true if file has a header row
+	 * @param readAhead the maximum number of lines to read ahead, or zero to read lines on the calling thread
+	 * @throws IOException if an error occurs
+	 */
+	public AbstractCsvResourceSource(String csvFile, boolean hasHeader, int readAhead) throws IOException {
+		Reader in = ResourceUtils.openReader(getClass().getClassLoader(), csvFile, "UTF-8");
+		if (in == null) {
+			throw new IOException("Cannot find resource " + csvFile);
+		}
+
+		this.csvFile = csvFile;
+		this.reader = new CSVReader(new BufferedReader(in, BUFFER_SIZE));
 
 		// Throw away first line if it's a header
 		if (hasHeader) {
 			reader.readNext();
 		}
+
+		if (readAhead > 0) {
+			readAheadQueue = new ArrayBlockingQueue<String[]>(readAhead);
+		}
 	}
 
 	/**
@@ -50,9 +99,39 @@ public abstract class AbstractCsvResourceSource<T extends OpenmrsObject> impleme
 	 */
 	@Override
 	public T fetchNext() throws Exception {
+		String[] line = nextLine();
+		if (line == null) {
+			shutdown();
+			return null;
+		}
+
+		return parseLine(line);
+	}
+
+	/**
+	 * Gets the next normalized line, from the read-ahead queue if lines are being read ahead
+	 * @return the line or null if there are no more lines or the source has been shut down
+	 * @throws Exception if an error occurs
+	 */
+	protected String[] nextLine() throws Exception {
+		if (closed) {
+			return null;
+		}
+		if (readAheadQueue != null) {
+			startReadAhead();
+			return takeReadAhead();
+		}
+		return readLine();
+	}
+
+	/**
+	 * Reads and normalizes the next line
+	 * @return the line or null if there are no more lines
+	 * @throws IOException if an error occurs
+	 */
+	protected String[] readLine() throws IOException {
 		String[] line = reader.readNext();
 		if (line == null) {
-			close();
 			return null;
 		}
 
@@ -63,16 +142,125 @@ public abstract class AbstractCsvResourceSource<T extends OpenmrsObject> impleme
 			line[c] = StringUtils.isNotEmpty(val) ? val : null;
 		}
 
-		return parseLine(line);
+		return line;
+	}
+
+	/**
+	 * Starts the read-ahead thread if it hasn't been started yet
+	 */
+	protected synchronized void startReadAhead() {
+		if (readAheadThread == null && !closed) {
+			readAheadThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					readAhead();
+				}
+			}, "metadatadeploy-csv-" + csvFile);
+			readAheadThread.setDaemon(true);
+			readAheadThread.start();
+		}
+	}
+
+	/**
+	 * Reads all lines into the read-ahead queue. Runs on the read-ahead thread, which closes the reader when finished.
+	 */
+	protected void readAhead() {
+		try {
+			try {
+				String[] line;
+				while ((line = readLine()) != null) {
+					if (!putReadAhead(line)) {
+						return;
+					}
+				}
+			}
+			catch (InterruptedException ex) {
+				// Source has been shut down
+				return;
+			}
+			catch (Exception ex) {
+				readAheadError = ex;
+			}
+
+			putReadAhead(END_OF_LINES);
+		}
+		catch (InterruptedException ex) {
+			// Source has been shut down
+		}
+		finally {
+			closeReader();
+		}
+	}
+
+	/**
+	 * Puts a line into the read-ahead queue, waiting for space until the source is shut down
+	 * @param line the line
+	 * @return true if the line was queued, false if the source was shut down
+	 * @throws InterruptedException if the thread is interrupted
+	 */
+	protected boolean putReadAhead(String[] line) throws InterruptedException {
+		while (!closed) {
+			if (readAheadQueue.offer(line, READ_AHEAD_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Takes the next line from the read-ahead queue
+	 * @return the line or null if there are no more lines or the source has been shut down
+	 * @throws Exception if the read-ahead thread failed
+	 */
+	protected String[] takeReadAhead() throws Exception {
+		String[] line;
+		while ((line = readAheadQueue.poll(READ_AHEAD_TIMEOUT_MS, TimeUnit.MILLISECONDS)) == null) {
+			if (closed) {
+				return null;
+			}
+			if (!readAheadThread.isAlive() && readAheadQueue.isEmpty()) {
+				throw new IOException("Read-ahead of " + csvFile + " stopped unexpectedly");
+			}
+		}
+
+		if (line == END_OF_LINES) {
+			// Leave end marker for any further calls
+			readAheadQueue.offer(END_OF_LINES);
+
+			if (readAheadError != null) {
+				throw readAheadError;
+			}
+			return null;
+		}
+		return line;
 	}
 
 	/**
-	 * Parses a CSV line into an object
+	 * Parses a CSV line into an object. If this source is decorated by a {@link ParallelParseSource} then this is called
+	 * concurrently from several worker threads, so must be thread-safe and mustn't keep state between lines.
 	 * @param line the line
 	 * @return the object
 	 */
 	protected abstract T parseLine(String[] line) throws Exception;
 
+	/**
+	 * Stops the read-ahead thread if there is one and closes the source. This is called once all lines have been
+	 * fetched, but can also be called to stop fetching early. It can be called more than once, and from a different
+	 * thread to the one fetching objects.
+	 * @throws IOException if an error occurs
+	 */
+	public synchronized void shutdown() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		if (readAheadThread != null) {
+			readAheadThread.interrupt();
+		}
+		close();
+	}
+
 	/**
 	 * Closes the source
 	 * @throws IOException if an error occurs
@@ -80,4 +268,16 @@ public abstract class AbstractCsvResourceSource<T extends OpenmrsObject> impleme
 	protected void close() throws IOException {
 		reader.close();
 	}
+
+	/**
+	 * Closes the reader, ignoring any error as there is nowhere to report it
+	 */
+	private void closeReader() {
+		try {
+			reader.close();
+		}
+		catch (IOException ex) {
+			// Nothing useful can be done if closing fails
+		}
+	}
 }
\ No newline at end of file
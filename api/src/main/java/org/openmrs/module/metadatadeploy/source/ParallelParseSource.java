@@ -0,0 +1,216 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.source;
+
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.metadatadeploy.SessionTask;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decorator for a CSV source which parses lines on a pool of worker threads, for sources whose parseLine does a lot of
+ * work. Lines are parsed in batches, and objects are returned in the same order as their lines. The number of batches
+ * being parsed or waiting to be returned is limited, so memory use doesn't depend on the size of the resource.
+ *
+ * Each batch is parsed in it's own Hibernate session, which is closed once the batch is parsed. Objects which
+ * parseLine fetches (e.g. a parent location) are therefore detached by the time they are returned, so this should only
+ * be used where such objects are just referenced by the parsed objects. The parseLine method of the decorated source is
+ * called concurrently by the worker threads, so must be thread-safe and mustn't keep state between lines.
+ *
+ * Worker threads are only started by the first fetch, and are shut down once all lines have been read, when parsing
+ * fails or when the source is closed. Workers which are left idle stop by themselves, so threads aren't leaked if a
+ * consumer stops fetching without closing the source.
+ */
+public class ParallelParseSource<T extends OpenmrsObject> implements ObjectSource<T>, Closeable {
+
+	private static final int DEFAULT_BATCH_SIZE = 50;
+
+	// How long an idle worker thread waits for another batch before stopping
+	private static final long WORKER_IDLE_SECONDS = 10;
+
+	private final AbstractCsvResourceSource<T> source;
+
+	private final int threads;
+
+	private final int batchSize;
+
+	private final int maxBatches;
+
+	private ExecutorService executor;
+
+	private final LinkedList<Future<List<T>>> batches = new LinkedList<Future<List<T>>>();
+
+	private Iterator<T> current;
+
+	private boolean endOfLines = false;
+
+	/**
+	 * Creates a new source with the default batch size, and at most two batches in progress per thread
+	 * @param source the source to parse lines of
+	 * @param threads the number of worker threads
+	 */
+	public ParallelParseSource(AbstractCsvResourceSource<T> source, int threads) {
+		this(source, threads, DEFAULT_BATCH_SIZE, threads * 2);
+	}
+
+	/**
+	 * Creates a new source
+	 * @param source the source to parse lines of
+	 * @param threads the number of worker threads
+	 * @param batchSize the number of lines parsed by each task
+	 * @param maxBatches the maximum number of batches being parsed or waiting to be returned
+	 */
+	public ParallelParseSource(AbstractCsvResourceSource<T> source, int threads, int batchSize, int maxBatches) {
+		if (threads < 1 || batchSize < 1 || maxBatches < 1) {
+			throw new IllegalArgumentException("Threads, batch size and maximum batches must be at least 1");
+		}
+
+		this.source = source;
+		this.threads = threads;
+		this.batchSize = batchSize;
+		this.maxBatches = maxBatches;
+	}
+
+	/**
+	 * @see ObjectSource#fetchNext()
+	 */
+	@Override
+	public T fetchNext() throws Exception {
+		try {
+			while (current == null || !current.hasNext()) {
+				submitBatches();
+
+				if (batches.isEmpty()) {
+					close();
+					return null;
+				}
+
+				current = batches.removeFirst().get().iterator();
+			}
+			return current.next();
+		}
+		catch (ExecutionException ex) {
+			close();
+			throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+		}
+		catch (Exception ex) {
+			close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Reads lines and submits them for parsing until the maximum number of batches are in progress
+	 * @throws Exception if an error occurs
+	 */
+	protected void submitBatches() throws Exception {
+		while (!endOfLines && batches.size() < maxBatches) {
+			List<String[]> lines = new ArrayList<String[]>(batchSize);
+			String[] line;
+			while (lines.size() < batchSize && (line = source.nextLine()) != null) {
+				lines.add(line);
+			}
+
+			if (!lines.isEmpty()) {
+				batches.addLast(getExecutor().submit(new ParseTask(lines)));
+			}
+			if (lines.size() < batchSize) {
+				endOfLines = true;
+
+				// No more batches will be submitted, so workers can stop once the remaining batches are parsed
+				if (executor != null) {
+					executor.shutdown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the worker thread pool, creating it if necessary
+	 * @return the executor
+	 */
+	protected ExecutorService getExecutor() {
+		if (executor == null) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, WORKER_IDLE_SECONDS, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ParseThreadFactory());
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		return executor;
+	}
+
+	/**
+	 * Stops the worker threads and closes the underlying source. This can be called more than once.
+	 * @throws IOException if an error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		batches.clear();
+		endOfLines = true;
+		source.shutdown();
+	}
+
+	/**
+	 * Task which parses a batch of lines in a new session
+	 */
+	protected class ParseTask extends SessionTask<List<T>> {
+
+		private final List<String[]> lines;
+
+		public ParseTask(List<String[]> lines) {
+			this.lines = lines;
+		}
+
+		@Override
+		protected List<T> doInSession() throws Exception {
+			List<T> objects = new ArrayList<T>(lines.size());
+			for (String[] line : lines) {
+				objects.add(source.parseLine(line));
+			}
+			return objects;
+		}
+	}
+
+	/**
+	 * Creates named daemon threads so that parse workers can be identified in thread dumps
+	 */
+	protected static class ParseThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "metadatadeploy-parse-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
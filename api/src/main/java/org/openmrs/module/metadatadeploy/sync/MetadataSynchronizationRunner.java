@@ -19,12 +19,16 @@ import org.apache.commons.logging.LogFactory;
 import org.openmrs.OpenmrsMetadata;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
+import org.openmrs.module.metadatadeploy.source.AbstractCsvResourceSource;
 import org.openmrs.module.metadatadeploy.source.ObjectSource;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Class which runs synchronizations of metadata objects
@@ -33,6 +37,11 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 
 	protected static final Log log = LogFactory.getLog(MetadataSynchronizationRunner.class);
 
+	/**
+	 * Default number of created, updated or retired objects which are flushed together
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
 	protected ObjectSource<T> source;
 
 	protected ObjectSynchronization<T> sync;
@@ -46,6 +55,20 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 	// a set because object equality is based on UUIDs and those can change during a sync
 	protected Map<Integer, T> notSyncedObjects = new HashMap<Integer, T>();
 
+	// Projections of existing objects by sync key, used instead of the key cache for projected synchronizations
+	protected Map<Object, SyncProjection> projectionCache = new HashMap<Object, SyncProjection>();
+
+	// After a projected sync this will contain the ids of all existing unretired items that weren't in the source
+	protected BitSet notSyncedIds = new BitSet();
+
+	protected int batchSize = DEFAULT_BATCH_SIZE;
+
+	// Objects created, updated or retired since the session was last flushed
+	protected List<T> batch = new ArrayList<T>();
+
+	// Whether changes are flushed in batches, with batched objects evicted from the session after each flush
+	protected boolean flushBatches = false;
+
 	/**
 	 * Creates a new synchronization process
 	 * @param source the object source
@@ -56,13 +79,42 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 		this.sync = sync;
 	}
 
+	/**
+	 * Sets the number of created, updated or retired objects which are flushed to the database together. This only
+	 * applies to projected synchronizations, as other synchronizations keep all existing objects in the session and
+	 * are flushed once when the transaction commits. Hibernate will only send each flush as JDBC batches if
+	 * hibernate.jdbc.batch_size is configured in the runtime properties.
+	 * @param batchSize the batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.batchSize = batchSize;
+	}
+
 	/**
 	 * Performs the synchronization
 	 */
 	public SyncResult<T> run() {
 		MetadataDeployService deployService = Context.getService(MetadataDeployService.class);
+		long startTime = System.currentTimeMillis();
+
+		ProjectedObjectSynchronization<T> projected = (sync instanceof ProjectedObjectSynchronization) ? (ProjectedObjectSynchronization<T>) sync : null;
+
+		// Only projected synchronizations don't keep references to existing objects, so only those can be evicted. Any
+		// other synchronization isn't flushed in batches as each flush would dirty check every object in the key cache
+		flushBatches = projected != null;
 
-		initializeCache();
+		// Projected synchronizations are for large sources, so the result only counts the changed objects
+		result = new SyncResult<T>(projected == null);
+
+		if (projected != null) {
+			initializeProjectionCache(projected);
+		}
+		else {
+			initializeCache();
+		}
 
 		try {
 			T next;
@@ -73,18 +125,56 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 				if (syncKey == null) {
 					throw new RuntimeException("Incoming object '" + next.getName() + "' has no sync key");
 				} else {
-					synchronizeObject(deployService, syncKey, next);
+					if (projected != null) {
+						synchronizeProjectedObject(deployService, projected, syncKey, next);
+					}
+					else {
+						synchronizeObject(deployService, syncKey, next);
+					}
 				}
+
+				result.setProcessed(result.getProcessed() + 1);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
+		} finally {
+			closeSource();
+		}
+
+		if (projected != null) {
+			retireProjectedNotInSource(deployService, projected);
+		}
+		else {
+			retireExistingNotInSource(deployService);
 		}
 
-		retireExistingNotInSource(deployService);
+		flushBatch();
+
+		result.setDuration(System.currentTimeMillis() - startTime);
+
+		log.info("Synchronized " + result.getProcessed() + " objects in " + result.getDuration() + "ms ("
+				+ String.format("%.1f", result.getThroughput()) + " objects/s)");
 
 		return result;
 	}
 
+	/**
+	 * Closes or shuts down the source if possible, so that any background threads stop even if the source wasn't exhausted
+	 */
+	protected void closeSource() {
+		try {
+			if (source instanceof Closeable) {
+				((Closeable) source).close();
+			}
+			else if (source instanceof AbstractCsvResourceSource) {
+				((AbstractCsvResourceSource<?>) source).shutdown();
+			}
+		}
+		catch (IOException ex) {
+			log.warn("Unable to close " + source.getClass().getSimpleName(), ex);
+		}
+	}
+
 	/**
 	 * Initializes the key -> object cache
 	 */
@@ -110,6 +200,33 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 		log.info("Loaded " + keyCache.size() + " existing objects with sync keys");
 	}
 
+	/**
+	 * Initializes the key -> projection cache
+	 * @param projected the projected synchronization
+	 */
+	protected void initializeProjectionCache(ProjectedObjectSynchronization<T> projected) {
+		for (SyncProjection projection : projected.fetchAllExistingProjections()) {
+			Object syncKey = projection.getSyncKey();
+
+			if (syncKey == null) {
+				log.warn("Ignoring object #" + projection.getId() + " with no sync key");
+			}
+			else if (projectionCache.containsKey(syncKey)) {
+				log.warn("Ignoring object #" + projection.getId() + " with duplicate sync key " + syncKey);
+			}
+			else {
+				projectionCache.put(syncKey, projection);
+
+				// Already retired objects will never need retiring so needn't be tracked
+				if (!projection.isRetired()) {
+					notSyncedIds.set(projection.getId());
+				}
+			}
+		}
+
+		log.info("Loaded " + projectionCache.size() + " existing object projections with sync keys");
+	}
+
 	/**
 	 * Synchronizes an object
 	 * @param syncKey the sync key
@@ -125,7 +242,8 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 			keyCache.put(syncKey, incoming);
 
 			log.info("Created new object '" + incoming.getName() + "' with sync key " + syncKey);
-			result.getCreated().add(incoming);
+			result.addCreated(incoming);
+			addToBatch(incoming);
 		}
 		else {
 			// Only if incoming object differs
@@ -133,13 +251,52 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 				deployService.overwriteObject(incoming, existing);
 
 				log.info("Updated existing object '" + existing.getName() + "' with sync key " + syncKey);
-				result.getUpdated().add(existing);
+				result.addUpdated(existing);
+				addToBatch(existing);
 			}
 
 			notSyncedObjects.remove(existing.getId());
 		}
 	}
 
+	/**
+	 * Synchronizes an object against the existing object projections. The existing object is only fetched if it's
+	 * content hash differs from that of the incoming object.
+	 * @param projected the projected synchronization
+	 * @param syncKey the sync key
+	 * @param incoming the object
+	 */
+	protected void synchronizeProjectedObject(MetadataDeployService deployService, ProjectedObjectSynchronization<T> projected, Object syncKey, T incoming) {
+		SyncProjection projection = projectionCache.get(syncKey);
+		Object contentHash = projected.getObjectContentHash(incoming);
+
+		if (projection == null) {
+			// Save incoming as new
+			deployService.saveObject(incoming);
+			projectionCache.put(syncKey, new SyncProjection(syncKey, incoming.getId(), contentHash, Boolean.TRUE.equals(incoming.isRetired())));
+
+			log.info("Created new object '" + incoming.getName() + "' with sync key " + syncKey);
+			result.addCreated(incoming);
+			addToBatch(incoming);
+		}
+		else {
+			if (projection.getContentHash() == null || !projection.getContentHash().equals(contentHash)) {
+				T existing = projected.fetchExisting(projection.getId());
+
+				// Only if incoming object differs
+				if (sync.updateRequired(incoming, existing)) {
+					deployService.overwriteObject(incoming, existing);
+
+					log.info("Updated existing object '" + existing.getName() + "' with sync key " + syncKey);
+					result.addUpdated(existing);
+					addToBatch(existing);
+				}
+			}
+
+			notSyncedIds.clear(projection.getId());
+		}
+	}
+
 	/**
 	 * Retires existing objects not found in the source
 	 */
@@ -150,8 +307,62 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 				deployService.uninstallObject(notSynced, "Not found in sync source");
 
 				log.info("Retired existing object '" + notSynced.getName() + "'");
-				result.getRetired().add(notSynced);
+				result.addRetired(notSynced);
+				addToBatch(notSynced);
+			}
+		}
+	}
+
+	/**
+	 * Retires existing objects not found in the source, fetching each only as it is retired
+	 * @param projected the projected synchronization
+	 */
+	protected void retireProjectedNotInSource(MetadataDeployService deployService, ProjectedObjectSynchronization<T> projected) {
+		for (int id = notSyncedIds.nextSetBit(0); id >= 0; id = notSyncedIds.nextSetBit(id + 1)) {
+			T notSynced = projected.fetchExisting(id);
+
+			if (notSynced != null && !notSynced.isRetired()) {
+				deployService.uninstallObject(notSynced, "Not found in sync source");
+
+				log.info("Retired existing object '" + notSynced.getName() + "'");
+				result.addRetired(notSynced);
+				addToBatch(notSynced);
 			}
 		}
 	}
+
+	/**
+	 * Adds a created, updated or retired object to the current batch, flushing the batch if it is full
+	 * @param obj the object
+	 */
+	protected void addToBatch(T obj) {
+		if (!flushBatches) {
+			return;
+		}
+
+		batch.add(obj);
+
+		if (batch.size() >= batchSize) {
+			flushBatch();
+		}
+	}
+
+	/**
+	 * Flushes all changes in the current batch to the database, and evicts the batched objects from the session
+	 */
+	protected void flushBatch() {
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		Context.flushSession();
+
+		for (T obj : batch) {
+			Context.evictFromSession(obj);
+		}
+
+		log.debug("Flushed batch of " + batch.size() + " objects");
+
+		batch.clear();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.sync;
+
+import org.openmrs.OpenmrsObject;
+
+import java.util.List;
+
+/**
+ * Synchronization which can describe existing objects with lightweight projections rather than hydrated entities, so
+ * that very large tables can be synchronized in bounded memory. Existing objects are only fetched when their content
+ * hash doesn't match that of the incoming object, or when they need to be retired.
+ */
+public interface ProjectedObjectSynchronization<T extends OpenmrsObject> extends ObjectSynchronization<T> {
+
+	/**
+	 * Fetches projections of all existing objects, ideally with a single query which selects only the required columns
+	 * @return the projections
+	 */
+	List<SyncProjection> fetchAllExistingProjections();
+
+	/**
+	 * Gets the content hash of the given incoming object. This must be calculated the same way as the hashes of the
+	 * existing object projections.
+	 * @param obj the object
+	 * @return the content hash
+	 */
+	Object getObjectContentHash(T obj);
+
+	/**
+	 * Fetches an existing object by id
+	 * @param id the object id
+	 * @return the object
+	 */
+	T fetchExisting(Integer id);
+}
@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.sync;
+
+/**
+ * Lightweight projection of an existing object for synchronization, i.e. just the columns needed to decide whether the
+ * object needs updating or retiring
+ */
+public class SyncProjection {
+
+	private final Object syncKey;
+
+	private final Integer id;
+
+	private final Object contentHash;
+
+	private final boolean retired;
+
+	/**
+	 * Creates a new projection
+	 * @param syncKey the sync key
+	 * @param id the object id
+	 * @param contentHash the content hash
+	 * @param retired whether the object is retired
+	 */
+	public SyncProjection(Object syncKey, Integer id, Object contentHash, boolean retired) {
+		this.syncKey = syncKey;
+		this.id = id;
+		this.contentHash = contentHash;
+		this.retired = retired;
+	}
+
+	/**
+	 * Gets the sync key
+	 * @return the sync key
+	 */
+	public Object getSyncKey() {
+		return syncKey;
+	}
+
+	/**
+	 * Gets the object id
+	 * @return the id
+	 */
+	public Integer getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the content hash
+	 * @return the content hash
+	 */
+	public Object getContentHash() {
+		return contentHash;
+	}
+
+	/**
+	 * Gets whether the object is retired
+	 * @return true if retired
+	 */
+	public boolean isRetired() {
+		return retired;
+	}
+}
@@ -20,7 +20,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Result of a synchronization describing the objects that were created, updated and retired
+ * Result of a synchronization describing the objects that were created, updated and retired. Results of large
+ * synchronizations can be created without objects, in which case only the counts are kept.
  */
 public class SyncResult<T extends OpenmrsMetadata> {
 
@@ -28,9 +29,66 @@ public class SyncResult<T extends OpenmrsMetadata> {
 	protected List<T> updated = new ArrayList<T>();
 	protected List<T> retired = new ArrayList<T>();
 
+	protected boolean keepObjects;
+
+	protected int createdCount;
+	protected int updatedCount;
+	protected int retiredCount;
+
+	protected int processed;
+	protected long duration;
+
+	/**
+	 * Creates a new result which keeps the created, updated and retired objects
+	 */
+	public SyncResult() {
+		this(true);
+	}
+
+	/**
+	 * Creates a new result
+	 * @param keepObjects whether to keep the created, updated and retired objects or only count them
+	 */
+	public SyncResult(boolean keepObjects) {
+		this.keepObjects = keepObjects;
+	}
+
+	/**
+	 * Adds a created object
+	 * @param obj the object
+	 */
+	public void addCreated(T obj) {
+		if (keepObjects) {
+			created.add(obj);
+		}
+		createdCount++;
+	}
+
+	/**
+	 * Adds an updated object
+	 * @param obj the object
+	 */
+	public void addUpdated(T obj) {
+		if (keepObjects) {
+			updated.add(obj);
+		}
+		updatedCount++;
+	}
+
+	/**
+	 * Adds a retired object
+	 * @param obj the object
+	 */
+	public void addRetired(T obj) {
+		if (keepObjects) {
+			retired.add(obj);
+		}
+		retiredCount++;
+	}
+
 	/**
 	 * Gets the created objects
-	 * @return the objects
+	 * @return the objects, which will be empty if this result doesn't keep objects
 	 */
 	public List<T> getCreated() {
 		return created;
@@ -38,7 +96,7 @@ public class SyncResult<T extends OpenmrsMetadata> {
 
 	/**
 	 * Gets the updated objects
-	 * @return the objects
+	 * @return the objects, which will be empty if this result doesn't keep objects
 	 */
 	public List<T> getUpdated() {
 		return updated;
@@ -46,9 +104,73 @@ public class SyncResult<T extends OpenmrsMetadata> {
 
 	/**
 	 * Gets the retired objects
-	 * @return the objects
+	 * @return the objects, which will be empty if this result doesn't keep objects
 	 */
 	public List<T> getRetired() {
 		return retired;
 	}
+
+	/**
+	 * Gets the number of created objects
+	 * @return the number of objects
+	 */
+	public int getCreatedCount() {
+		return createdCount;
+	}
+
+	/**
+	 * Gets the number of updated objects
+	 * @return the number of objects
+	 */
+	public int getUpdatedCount() {
+		return updatedCount;
+	}
+
+	/**
+	 * Gets the number of retired objects
+	 * @return the number of objects
+	 */
+	public int getRetiredCount() {
+		return retiredCount;
+	}
+
+	/**
+	 * Gets the number of incoming objects which were processed
+	 * @return the number of objects
+	 */
+	public int getProcessed() {
+		return processed;
+	}
+
+	/**
+	 * Sets the number of incoming objects which were processed
+	 * @param processed the number of objects
+	 */
+	public void setProcessed(int processed) {
+		this.processed = processed;
+	}
+
+	/**
+	 * Gets the duration of the synchronization
+	 * @return the duration in milliseconds
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Sets the duration of the synchronization
+	 * @param duration the duration in milliseconds
+	 */
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	/**
+	 * Gets the throughput of the synchronization
+	 * @return the number of processed objects per second
+	 */
+	public double getThroughput() {
+		return duration > 0 ? (processed * 1000.0) / duration : 0.0;
+	}
 }
\ No newline at end of file
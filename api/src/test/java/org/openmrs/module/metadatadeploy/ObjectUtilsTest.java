@@ -22,10 +22,13 @@ import org.openmrs.GlobalProperty;
 import org.openmrs.Location;
 import org.openmrs.Privilege;
 import org.openmrs.Role;
+import org.openmrs.User;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import static org.hamcrest.Matchers.*;
@@ -139,6 +142,83 @@ public class ObjectUtilsTest {
 		Assert.assertThat(target.getCollectionValues(), contains(owned2));
 	}
 
+	/**
+	 * @see ObjectUtils#differs(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)
+	 */
+	@Test
+	public void differs_shouldIgnoreAuditFieldsAndCompareDatesByTime() {
+		Location source = new Location();
+		source.setName("Name");
+		source.setUuid("location-uuid");
+		source.setDateRetired(new Date(1000));
+
+		Location target = new Location();
+		target.setName("Name");
+		target.setUuid("location-uuid");
+		target.setDateRetired(new Timestamp(1000));
+		target.setCreator(new User(1));
+		target.setDateCreated(new Date());
+
+		Assert.assertThat(ObjectUtils.differs(source, target, null), is(false));
+
+		source.setDescription("Changed");
+
+		Assert.assertThat(ObjectUtils.differs(source, target, null), is(true));
+		Assert.assertThat(ObjectUtils.differs(source, target, Collections.singleton("description")), is(false));
+	}
+
+	/**
+	 * @see ObjectUtils#differs(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)
+	 */
+	@Test
+	public void differs_shouldCompareCollectionItemsByUuid() {
+		TestClass1 source = new TestClass1(null, "test", 123.0, null);
+		TestClass1 target = new TestClass1(1, "test", 123.0, null);
+		target.setUuid(source.getUuid());
+
+		TestClass2 sourceItem = new TestClass2();
+		TestClass2 targetItem = new TestClass2();
+		targetItem.setId(2);
+		targetItem.setUuid(sourceItem.getUuid());
+
+		source.addCollectionValue(sourceItem);
+		target.addCollectionValue(targetItem);
+
+		// Ignore id of source as overwrite doesn't change it
+		source.setId(1);
+
+		Assert.assertThat(ObjectUtils.differs(source, target, null), is(false));
+
+		// Check new item's id is restored
+		Assert.assertThat(sourceItem.getId(), nullValue());
+
+		source.addCollectionValue(new TestClass2());
+
+		Assert.assertThat(ObjectUtils.differs(source, target, null), is(true));
+	}
+
+	/**
+	 * @see ObjectUtils#getPlan(Class)
+	 */
+	@Test
+	public void getPlan_shouldClassifySerializableFields() {
+		ObjectUtils.FieldPlan[] plan = ObjectUtils.getPlan(TestClass1.class);
+		List<String> names = new ArrayList<String>();
+		for (ObjectUtils.FieldPlan field : plan) {
+			names.add(field.getName());
+		}
+
+		// Superclass field first
+		Assert.assertThat(names, contains("uuid", "id", "stringValue", "doubleValue", "objectValue", "collectionValues"));
+
+		Assert.assertThat(plan[3].isReference(), is(false));
+		Assert.assertThat(plan[4].isReference(), is(true));
+		Assert.assertThat(plan[5].isCollection(), is(true));
+
+		// Check plan is cached
+		Assert.assertThat(ObjectUtils.getPlan(TestClass1.class), sameInstance(plan));
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.ObjectUtils#usesId(org.openmrs.OpenmrsObject)
 	 */
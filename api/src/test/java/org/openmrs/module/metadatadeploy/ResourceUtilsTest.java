@@ -0,0 +1,113 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link ResourceUtils}
+ */
+public class ResourceUtilsTest {
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	/**
+	 * @see ResourceUtils#openReader(ClassLoader, String, String)
+	 */
+	@Test
+	public void openReader_shouldDecodeMappedFileResource() throws Exception {
+		ClassLoader loader = getClass().getClassLoader();
+
+		Assert.assertThat(ResourceUtils.mapResource(loader, "test-location-source.csv"), notNullValue());
+
+		BufferedReader reader = new BufferedReader(ResourceUtils.openReader(loader, "test-location-source.csv", "UTF-8"));
+		Assert.assertThat(reader.readLine(), startsWith("Name"));
+		reader.close();
+
+		Assert.assertThat(ResourceUtils.openReader(loader, "xxx.csv", "UTF-8"), nullValue());
+	}
+
+	/**
+	 * @see ResourceUtils#getResourceFile(ClassLoader, String, java.io.File)
+	 */
+	@Test
+	public void getResourceFile_shouldExtractJarResourceToCacheDirectory() throws Exception {
+		File jarFile = createJar("test/resource.txt", "Testing \u00e9");
+		File cacheDir = tempFolder.newFolder("cache");
+		ClassLoader loader = new URLClassLoader(new URL[] { jarFile.toURI().toURL() }, null);
+
+		File extracted = ResourceUtils.getResourceFile(loader, "test/resource.txt", cacheDir);
+		Assert.assertThat(extracted.getAbsolutePath(), startsWith(cacheDir.getAbsolutePath()));
+		Assert.assertThat(extracted.lastModified(), is(jarFile.lastModified()));
+		Assert.assertThat(read(new InputStreamReader(new FileInputStream(extracted), "UTF-8")), is("Testing \u00e9"));
+
+		// Second call should re-use the extracted file
+		Assert.assertThat(ResourceUtils.getResourceFile(loader, "test/resource.txt", cacheDir), is(extracted));
+
+		Assert.assertThat(ResourceUtils.getResourceFile(loader, "test/xxx.txt", cacheDir), nullValue());
+		Assert.assertThat(ResourceUtils.getResourceFile(loader, "test/resource.txt", null), nullValue());
+	}
+
+	/**
+	 * @see ResourceUtils#openResource(ClassLoader, String)
+	 */
+	@Test
+	public void openResource_shouldReadMappedFileResource() throws Exception {
+		InputStream in = ResourceUtils.openResource(getClass().getClassLoader(), "test-package-1.zip");
+		Assert.assertThat(in.read(), is((int) 'P'));
+		Assert.assertThat(in.read(), is((int) 'K'));
+		in.close();
+	}
+
+	private File createJar(String entryName, String content) throws IOException {
+		File jarFile = tempFolder.newFile("test.jar");
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile));
+		out.putNextEntry(new JarEntry(entryName));
+		out.write(content.getBytes("UTF-8"));
+		out.closeEntry();
+		out.close();
+		return jarFile;
+	}
+
+	private String read(Reader reader) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		char[] chars = new char[16];
+		int count;
+		while ((count = reader.read(chars, 0, chars.length)) >= 0) {
+			sb.append(chars, 0, count);
+		}
+		reader.close();
+		return sb.toString();
+	}
+}
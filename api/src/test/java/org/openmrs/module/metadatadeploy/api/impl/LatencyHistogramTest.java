@@ -0,0 +1,55 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+	/**
+	 * @see LatencyHistogram#getPercentileMicros(double)
+	 */
+	@Test
+	public void getPercentileMicros_shouldReturnUpperBoundOfBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 95; ++i) {
+			histogram.record(10000); // 10us
+		}
+		for (int i = 0; i < 5; ++i) {
+			histogram.record(1000000); // 1000us
+		}
+
+		Assert.assertThat(histogram.getCount(), is(100L));
+		Assert.assertThat(histogram.getMeanMicros(), is(59L));
+		Assert.assertThat(histogram.getMaxMicros(), is(1000L));
+		Assert.assertThat(histogram.getPercentileMicros(50), is(15L));
+		Assert.assertThat(histogram.getPercentileMicros(95), is(15L));
+		Assert.assertThat(histogram.getPercentileMicros(99), is(1000L));
+	}
+
+	/**
+	 * @see LatencyHistogram#getPercentileMicros(double)
+	 */
+	@Test
+	public void getPercentileMicros_shouldReturnZeroIfEmpty() {
+		Assert.assertThat(new LatencyHistogram().getPercentileMicros(95), is(0L));
+	}
+}
@@ -18,7 +18,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.openmrs.Concept;
+import org.openmrs.EncounterType;
 import org.openmrs.Location;
+import org.openmrs.OpenmrsObject;
 import org.openmrs.Patient;
 import org.openmrs.Privilege;
 import org.openmrs.Program;
@@ -29,30 +31,58 @@ import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.MetadataUtils;
 import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
 import org.openmrs.module.metadatadeploy.bundle.AbstractMetadataBundle;
+import org.openmrs.module.metadatadeploy.bundle.InstallLane;
 import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.bundle.PackageBundle;
+import org.openmrs.module.metadatadeploy.bundle.PackageDescriptor;
 import org.openmrs.module.metadatadeploy.bundle.Requires;
+import org.openmrs.module.metadatadeploy.handler.InstallScope;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
 import org.openmrs.module.metadatadeploy.handler.impl.ConceptDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.impl.EncounterTypeDeployHandler;
 import org.openmrs.module.metadatadeploy.handler.impl.ProgramDeployHandler;
+import org.openmrs.module.metadatadeploy.source.InstallCallback;
+import org.openmrs.module.metadatadeploy.source.ObjectSource;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.aop.framework.Advised;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.encounterType;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.form;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.idSet;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.location;
+import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.packageFile;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.privilege;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.role;
+import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.visitType;
 
 /**
  * Tests for {@link MetadataDeployServiceImpl}
@@ -74,6 +104,27 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 	@Autowired
 	private TestBundle6 testBundle6;
 
+	@Autowired
+	private TestBundle9 testBundle9;
+
+	@Autowired
+	private TestBundle10 testBundle10;
+
+	@Autowired
+	private TestBundle11 testBundle11;
+
+	@Autowired
+	private TestBundle12 testBundle12;
+
+	@Autowired
+	private TestBundle13 testBundle13;
+
+	@Autowired
+	private TestBundle14 testBundle14;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
 	/**
 	 * @see MetadataDeployServiceImpl#installBundles(java.util.Collection)
 	 */
@@ -111,6 +162,88 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle6));
 	}
 
+	/**
+	 * @see MetadataDeployServiceImpl#installBundles(java.util.Collection)
+	 */
+	@Test(expected = APIException.class)
+	public void installBundles_shouldThrowAPIExceptionIfRequirementsAreCyclic() {
+		deployService.installBundles(Arrays.<MetadataBundle>asList(new TestBundle7(), new TestBundle8()));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installBundles(java.util.Collection)
+	 */
+	@Test
+	public void installBundles_shouldSkipBundlesWhoseContentIsUnchanged() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		impl.setSkipUnchangedBundles(true);
+
+		try {
+			deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle9));
+
+			String digestProperty = MetadataDeployServiceImpl.GP_BUNDLE_DIGEST_PREFIX + TestBundle9.class.getName();
+			Assert.assertThat(Context.getAdministrationService().getGlobalProperty(digestProperty), notNullValue());
+
+			// Modify installed object so we can tell if bundle is re-installed
+			EncounterType encounterType = MetadataUtils.existing(EncounterType.class, uuid("enc-type9-uuid"));
+			encounterType.setDescription("Modified");
+			Context.getEncounterService().saveEncounterType(encounterType);
+
+			deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle9));
+
+			Assert.assertThat(encounterType.getDescription(), is("Modified"));
+
+			// Disabling skipping should re-install the bundle
+			impl.setSkipUnchangedBundles(false);
+			deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle9));
+
+			Assert.assertThat(encounterType.getDescription(), is("Testing"));
+		}
+		finally {
+			impl.setSkipUnchangedBundles(null);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installBundles(java.util.Collection)
+	 */
+	@Test
+	public void installBundles_shouldNotSkipBundlesWhichChangeObjectsDirectly() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		impl.setSkipUnchangedBundles(true);
+
+		try {
+			deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle12));
+
+			String digestProperty = MetadataDeployServiceImpl.GP_BUNDLE_DIGEST_PREFIX + TestBundle12.class.getName();
+			Assert.assertThat(Context.getAdministrationService().getGlobalProperty(digestProperty), nullValue());
+			Assert.assertThat(Context.getEncounterService().getEncounterType(1).getDescription(), is("Changed directly"));
+		}
+		finally {
+			impl.setSkipUnchangedBundles(null);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installBundles(java.util.Collection)
+	 */
+	@Test
+	public void installBundles_shouldInstallPreloadedPackages() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		impl.setPackagePreloadThreads(1);
+
+		try {
+			Assert.assertThat(MetadataUtils.possible(VisitType.class, "3371a4d4-f66f-4454-a86d-92c7b3da990c"), nullValue());
+
+			deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle10));
+
+			Assert.assertThat(MetadataUtils.possible(VisitType.class, "3371a4d4-f66f-4454-a86d-92c7b3da990c"), notNullValue());
+		}
+		finally {
+			impl.setPackagePreloadThreads(null);
+		}
+	}
+
 	/**
 	 * @see MetadataDeployServiceImpl#installPackage(String, ClassLoader, String)
 	 */
@@ -134,6 +267,31 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		Assert.assertThat(MetadataUtils.possible(VisitType.class, "3371a4d4-f66f-4454-a86d-92c7b3da990c"), notNullValue());
 	}
 
+	/**
+	 * @see MetadataDeployServiceImpl#installPackage(String, ClassLoader, String)
+	 */
+	@Test
+	public void installPackage_shouldReinstallPackageIfContentHasChanged() throws Exception {
+		final String TEST_PACKAGE_GROUP_UUID = "5c7fd8e7-e9a5-43a2-8ba5-c7694fc8db4a";
+		final String TEST_PACKAGE_FILENAME = "test-package-1.zip";
+		final String CHECKSUM_PROPERTY = MetadataDeployServiceImpl.GP_PACKAGE_CHECKSUM_PREFIX + TEST_PACKAGE_GROUP_UUID;
+
+		ClassLoader classLoader = getClass().getClassLoader();
+
+		Assert.assertThat(deployService.installPackage(TEST_PACKAGE_FILENAME, classLoader, TEST_PACKAGE_GROUP_UUID), is(true));
+
+		PackageChecksum checksum = PackageChecksum.parse(Context.getAdministrationService().getGlobalProperty(CHECKSUM_PROPERTY));
+		Assert.assertThat(checksum.getFileStamp(), notNullValue());
+
+		// Simulate package content changing without a version change
+		Context.getAdministrationService().setGlobalProperty(CHECKSUM_PROPERTY, "xxx");
+
+		Assert.assertThat(deployService.installPackage(TEST_PACKAGE_FILENAME, classLoader, TEST_PACKAGE_GROUP_UUID), is(true));
+		Assert.assertThat(Context.getAdministrationService().getGlobalProperty(CHECKSUM_PROPERTY), is(checksum.toString()));
+
+		Assert.assertThat(deployService.installPackage(TEST_PACKAGE_FILENAME, classLoader, TEST_PACKAGE_GROUP_UUID), is(false));
+	}
+
 	/**
 	 * @see MetadataDeployServiceImpl#installPackage(String, ClassLoader, String)
 	 */
@@ -177,6 +335,311 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		deployService.installObject(location);
 	}
 
+	/**
+	 * @see MetadataDeployServiceImpl#installObject(org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void installObject_shouldNotOverwriteUnchangedObject() throws Exception {
+		EncounterType existing = deployService.installObject(encounterType("Name", "Desc", uuid("enc-type-uuid")));
+		Context.flushSession();
+		Date dateCreated = existing.getDateCreated();
+
+		// Audit fields would be reset if the existing object was overwritten and saved
+		Assert.assertThat(deployService.installObject(encounterType("Name", "Desc", uuid("enc-type-uuid"))), is(existing));
+		Assert.assertThat(existing.getDateCreated(), sameInstance(dateCreated));
+
+		EncounterType changed = encounterType("New name", "Desc", uuid("enc-type-uuid"));
+		Assert.assertThat(deployService.installObject(changed), is(existing));
+		Assert.assertThat(existing.getName(), is("New name"));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installObject(org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void installObject_shouldRecordMetrics() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		DeployMetrics metrics = new DeployMetrics();
+		impl.setMetrics(metrics);
+
+		try {
+			deployService.installObject(encounterType("Name", "Desc", uuid("enc-type-uuid")));
+			deployService.installObject(encounterType("Name", "Desc", uuid("enc-type-uuid")));
+			deployService.installObject(encounterType("New name", "Desc", uuid("enc-type-uuid")));
+
+			Assert.assertThat(metrics.getObjectsCreated(), is(1L));
+			Assert.assertThat(metrics.getObjectsUnchanged(), is(1L));
+			Assert.assertThat(metrics.getObjectsUpdated(), is(1L));
+
+			DeployMetrics.HandlerMetrics handlerMetrics = metrics.getHandlerMetrics(impl.getHandler(EncounterType.class));
+			Assert.assertThat(handlerMetrics.getLatency(DeployMetrics.Operation.FETCH).getCount(), is(3L));
+			Assert.assertThat(handlerMetrics.getLatency(DeployMetrics.Operation.SAVE).getCount(), is(2L));
+			Assert.assertThat(handlerMetrics.getLatency(DeployMetrics.Operation.OVERWRITE).getCount(), is(1L));
+			Assert.assertThat(metrics.getHandlerStatistics()[0], startsWith(EncounterTypeDeployHandler.class.getName() + " "));
+
+			deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle9));
+
+			Assert.assertThat(metrics.getBundlesInstalled(), is(1L));
+			Assert.assertThat(metrics.getBundleTimes()[0], startsWith(TestBundle9.class.getName() + ": "));
+		}
+		finally {
+			impl.setMetrics(null);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installLanes(java.util.List)
+	 */
+	@Test
+	public void installLanes_shouldInstallAllLanesBeforeReturning() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		DeployMetrics metrics = new DeployMetrics();
+		impl.setMetrics(metrics);
+
+		try {
+			deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle11));
+
+			Assert.assertThat(MetadataUtils.existing(EncounterType.class, uuid("enc-type11-uuid")), notNullValue());
+			Assert.assertThat(MetadataUtils.existing(VisitType.class, uuid("visit-type11-uuid")), notNullValue());
+			Assert.assertThat(MetadataUtils.existing(EncounterType.class, uuid("enc-type11b-uuid")), notNullValue());
+
+			Assert.assertThat(metrics.getLaneTimes().length, is(2));
+		}
+		finally {
+			impl.setMetrics(null);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installLanes(java.util.List)
+	 */
+	@Test
+	public void installLanes_shouldInstallLanesInParallelWithinReadCommittedTransaction() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		impl.setInstallThreads(2);
+
+		final Set<String> laneThreads = Collections.synchronizedSet(new HashSet<String>());
+
+		// Lanes are only run in parallel if the current transaction can see what they commit
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+
+		try {
+			transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					deployService.installLanes(Arrays.<InstallLane>asList(new InstallLane("encounter types") {
+						@Override
+						public void run() {
+							laneThreads.add(Thread.currentThread().getName());
+							deployService.installObject(encounterType("Lane Encounter", "Testing", uuid("enc-type-lane-uuid")));
+						}
+					}, new InstallLane("visit types") {
+						@Override
+						public void run() {
+							laneThreads.add(Thread.currentThread().getName());
+							deployService.installObject(visitType("Lane Visit", "Testing", uuid("visit-type-lane-uuid")));
+						}
+					}));
+
+					Assert.assertThat(MetadataUtils.existing(EncounterType.class, uuid("enc-type-lane-uuid")), notNullValue());
+					Assert.assertThat(MetadataUtils.existing(VisitType.class, uuid("visit-type-lane-uuid")), notNullValue());
+
+					status.setRollbackOnly();
+				}
+			});
+
+			Assert.assertThat(laneThreads, is(not(empty())));
+			Assert.assertThat(laneThreads, everyItem(startsWith("metadatadeploy-lane-")));
+		}
+		finally {
+			impl.setInstallThreads(null);
+
+			// Lanes committed their own transactions, so their objects aren't rolled back with the test
+			transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_DEFAULT);
+			transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					EncounterType encounterType = Context.getEncounterService().getEncounterTypeByUuid(uuid("enc-type-lane-uuid"));
+					if (encounterType != null) {
+						Context.getEncounterService().purgeEncounterType(encounterType);
+					}
+					VisitType visitType = Context.getVisitService().getVisitTypeByUuid(uuid("visit-type-lane-uuid"));
+					if (visitType != null) {
+						Context.getVisitService().purgeVisitType(visitType);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installLanes(java.util.List)
+	 */
+	@Test(expected = APIException.class)
+	public void installLanes_shouldFailIfBundleHasAlreadyWrittenSomething() throws Exception {
+		deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle13));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installLanes(java.util.List)
+	 */
+	@Test
+	public void installLanes_shouldInstallLanesSeriallyOnBundleInstallWorkers() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		impl.setInstallThreads(2);
+		testBundle14.laneThreads.clear();
+
+		try {
+			// Bundle tasks install in read committed transactions, where lanes would otherwise be run in parallel
+			new ParallelBundleInstaller(impl, transactionManager, 2).new BundleTask(testBundle14).call();
+
+			Assert.assertThat(testBundle14.laneThreads, contains(Thread.currentThread().getName()));
+			Assert.assertThat(ParallelBundleInstaller.isInstallingBundle(), is(false));
+		}
+		finally {
+			impl.setInstallThreads(null);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installObject(org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler, org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void installObject_shouldOverwriteObjectIfHandlerCantCompareObjects() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		DeployMetrics metrics = new DeployMetrics();
+		impl.setMetrics(metrics);
+
+		try {
+			EncounterType existing = deployService.installObject(encounterType("Name", "Desc", uuid("enc-type-uuid")));
+
+			EncounterType installed = impl.installObject(new SimpleEncounterTypeHandler(), encounterType("Name", "Desc", uuid("enc-type-uuid")), existing);
+
+			Assert.assertThat(installed, is(existing));
+			Assert.assertThat(metrics.getObjectsUnchanged(), is(0L));
+			Assert.assertThat(metrics.getObjectsUpdated(), is(1L));
+		}
+		finally {
+			impl.setMetrics(null);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installObjects(java.util.Collection)
+	 */
+	@Test
+	public void installObjects_shouldInstallAllObjectsInOrder() throws Exception {
+		EncounterType existing = deployService.installObject(encounterType("Old name", "Old desc", uuid("enc-type-uuid")));
+
+		List<OpenmrsObject> installed = deployService.installObjects(Arrays.<OpenmrsObject>asList(
+				encounterType("New name", "New desc", uuid("enc-type-uuid")),
+				role("Test Role 1", "Testing", null, null),
+				encounterType("Another", "Testing", uuid("enc-type2-uuid"))
+		));
+
+		Assert.assertThat(installed.size(), is(3));
+
+		// Check existing object was updated rather than replaced
+		Assert.assertThat(installed.get(0), is((OpenmrsObject) existing));
+		Assert.assertThat(existing.getName(), is("New name"));
+
+		Assert.assertThat(installed.get(1), is((OpenmrsObject) MetadataUtils.existing(Role.class, "Test Role 1")));
+		Assert.assertThat(installed.get(2), is((OpenmrsObject) MetadataUtils.existing(EncounterType.class, uuid("enc-type2-uuid"))));
+
+		// Check everything can be persisted
+		Context.flushSession();
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installObjects(java.util.Collection)
+	 */
+	@Test
+	public void installObjects_shouldMatchUuidsExactly() throws Exception {
+		deployService.installObject(encounterType("Lower", "Testing", uuid("enc-type-uuid")));
+
+		List<EncounterType> installed = deployService.installObjects(Arrays.asList(
+				encounterType("Lower", "Testing", uuid("enc-type-uuid")),
+				encounterType("Upper", "Testing", uuid("ENC-TYPE-UUID"))
+		));
+
+		Assert.assertThat(installed.get(0).getUuid(), is(uuid("enc-type-uuid")));
+		Assert.assertThat(installed.get(1).getUuid(), is(uuid("ENC-TYPE-UUID")));
+		Assert.assertThat(installed.get(1), not(sameInstance(installed.get(0))));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installObjects(java.util.Collection)
+	 */
+	@Test(expected = APIException.class)
+	public void installObjects_shouldThrowAPIExceptionForObjectWithoutIdentifier() throws Exception {
+		deployService.installObjects(Arrays.asList(encounterType("Name", "Testing", null)));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#fetchAll(org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler, java.util.Collection)
+	 */
+	@Test
+	public void fetchAll_shouldFetchOneAtATimeIfHandlerDoesNotFetchInBatches() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		EncounterType existing = deployService.installObject(encounterType("Name", "Testing", uuid("enc-type-uuid")));
+
+		Map<String, EncounterType> fetched = impl.fetchAll(new SimpleEncounterTypeHandler(), Arrays.asList(uuid("enc-type-uuid"), uuid("xxx")));
+
+		Assert.assertThat(fetched.size(), is(1));
+		Assert.assertThat(fetched.get(uuid("enc-type-uuid")), is(existing));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installFromSource(org.openmrs.module.metadatadeploy.source.ObjectSource)
+	 */
+	@Test
+	public void installFromSource_shouldRethrowFailuresWithTheirCause() throws Exception {
+		final IllegalStateException failure = new IllegalStateException("Unreadable");
+
+		try {
+			deployService.installFromSource(new ObjectSource<EncounterType>() {
+				@Override
+				public EncounterType fetchNext() {
+					throw failure;
+				}
+			});
+			Assert.fail();
+		}
+		catch (APIException ex) {
+			Assert.assertThat(ex.getCause(), is((Throwable) failure));
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installFromSource(org.openmrs.module.metadatadeploy.source.ObjectSource, int, org.openmrs.module.metadatadeploy.source.InstallCallback)
+	 */
+	@Test
+	public void installFromSource_shouldInstallObjectsInChunks() throws Exception {
+		ObjectSource<EncounterType> source = new ObjectSource<EncounterType>() {
+			private int count = 0;
+
+			@Override
+			public EncounterType fetchNext() {
+				return count < 5 ? encounterType("Name #" + (++count), "Testing", uuid("enc-type" + count + "-uuid")) : null;
+			}
+		};
+
+		final List<String> installed = new ArrayList<String>();
+
+		int count = deployService.installFromSource(source, 2, new InstallCallback<EncounterType>() {
+			@Override
+			public void installed(EncounterType obj) {
+				installed.add(obj.getName());
+			}
+		});
+
+		Assert.assertThat(count, is(5));
+		Assert.assertThat(installed, contains("Name #1", "Name #2", "Name #3", "Name #4", "Name #5"));
+		Assert.assertThat(MetadataUtils.existing(EncounterType.class, uuid("enc-type5-uuid")).getName(), is("Name #5"));
+	}
+
 	/**
 	 * @see MetadataDeployServiceImpl#fetchObject(Class, String)
 	 */
@@ -186,6 +649,123 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		Assert.assertThat(deployService.fetchObject(Program.class, "da4a0391-ba62-4fad-ad66-1e3722d16380"), is(Context.getProgramWorkflowService().getProgram(1)));
 	}
 
+	/**
+	 * @see MetadataDeployServiceImpl#fetchObject(Class, String)
+	 */
+	@Test
+	public void fetchObject_shouldUseInstallScopeIfOpen() throws Exception {
+		InstallScope scope = InstallScope.open();
+		try {
+			Location xanadu = deployService.fetchObject(Location.class, "9356400c-a5a2-4532-8f2b-2361b3446eb8");
+
+			Assert.assertThat(deployService.fetchObject(Location.class, "9356400c-a5a2-4532-8f2b-2361b3446eb8"), sameInstance(xanadu));
+			Assert.assertThat(scope.getHits(), is(1));
+			Assert.assertThat(scope.getMisses(), is(1));
+
+			// Saving should remove the cached object
+			deployService.saveObject(xanadu);
+			deployService.fetchObject(Location.class, "9356400c-a5a2-4532-8f2b-2361b3446eb8");
+
+			Assert.assertThat(scope.getHits(), is(1));
+			Assert.assertThat(scope.getMisses(), is(2));
+		}
+		finally {
+			scope.close();
+		}
+
+		Assert.assertThat(InstallScope.current(), nullValue());
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#fetchObject(Class, String)
+	 */
+	@Test
+	public void fetchObject_shouldUseLookupCacheForConfiguredTypes() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		MetadataLookupCache cache = new MetadataLookupCache(Arrays.<Class<?>>asList(EncounterType.class), 10, 60000);
+		DeployMetrics metrics = new DeployMetrics();
+		impl.setLookupCache(cache);
+		impl.setMetrics(metrics);
+
+		try {
+			EncounterType encounterType = deployService.installObject(encounterType("Name", "Desc", uuid("enc-type-cache")));
+
+			Assert.assertThat(deployService.fetchObject(EncounterType.class, uuid("enc-type-cache")), is(encounterType));
+			Assert.assertThat(deployService.fetchObject(EncounterType.class, uuid("enc-type-cache")), sameInstance(encounterType));
+			Assert.assertThat(metrics.getLookupCacheHits(), is(1L));
+			Assert.assertThat(metrics.getLookupCacheMisses(), is(1L));
+
+			// Other types aren't cached
+			deployService.fetchObject(Location.class, "9356400c-a5a2-4532-8f2b-2361b3446eb8");
+			Assert.assertThat(cache.getSize(), is(1));
+
+			// Saving should remove the cached key
+			deployService.saveObject(encounterType);
+			Assert.assertThat(cache.getSize(), is(0));
+		}
+		finally {
+			impl.setLookupCache(null);
+			impl.setMetrics(null);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#fetchObject(Class, String)
+	 */
+	@Test
+	public void fetchObject_shouldNotReturnCachedObjectsWhoseIdentifierHasChanged() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		MetadataLookupCache cache = new MetadataLookupCache(Arrays.<Class<?>>asList(EncounterType.class), 10, 60000);
+		DeployMetrics metrics = new DeployMetrics();
+		impl.setLookupCache(cache);
+		impl.setMetrics(metrics);
+
+		try {
+			EncounterType encounterType = deployService.installObject(encounterType("Name", "Desc", uuid("enc-type-cache")));
+			deployService.fetchObject(EncounterType.class, uuid("enc-type-cache"));
+
+			// Change the UUID without going through the deploy service, so the cached key isn't invalidated
+			encounterType.setUuid(uuid("enc-type-changed"));
+			Context.getEncounterService().saveEncounterType(encounterType);
+
+			Assert.assertThat(deployService.fetchObject(EncounterType.class, uuid("enc-type-cache")), nullValue());
+			Assert.assertThat(metrics.getLookupCacheHits(), is(0L));
+			Assert.assertThat(metrics.getLookupCacheMisses(), is(2L));
+			Assert.assertThat(cache.getSize(), is(0));
+		}
+		finally {
+			impl.setLookupCache(null);
+			impl.setMetrics(null);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#fetchObject(Class, String)
+	 */
+	@Test
+	public void fetchObject_shouldMatchCachedNamesCaseInsensitively() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		MetadataLookupCache cache = new MetadataLookupCache(Arrays.<Class<?>>asList(Role.class), 10, 60000);
+		DeployMetrics metrics = new DeployMetrics();
+		impl.setLookupCache(cache);
+		impl.setMetrics(metrics);
+
+		try {
+			Role role = deployService.installObject(role("Test Role 1", "Testing", null, null));
+
+			// Roles are fetched by name case-insensitively, so a key can be cached for a name in a different case
+			cache.put(impl.getHandler(Role.class), "test role 1", "Test Role 1");
+
+			Assert.assertThat(deployService.fetchObject(Role.class, "test role 1"), is(role));
+			Assert.assertThat(metrics.getLookupCacheHits(), is(1L));
+			Assert.assertThat(cache.getSize(), is(1));
+		}
+		finally {
+			impl.setLookupCache(null);
+			impl.setMetrics(null);
+		}
+	}
+
 	/**
 	 * @see MetadataDeployServiceImpl#saveObject(org.openmrs.OpenmrsObject)
 	 */
@@ -315,6 +895,149 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		}
 	}
 
+	/**
+	 * Has cyclic requirement with TestBundle8
+	 */
+	@Requires({ TestBundle8.class })
+	public static class TestBundle7 extends AbstractMetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ TestBundle7.class })
+	public static class TestBundle8 extends AbstractMetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Component
+	public static class TestBundle9 extends AbstractMetadataBundle {
+		@Override
+		public void install() {
+			install(encounterType("Test Encounter 9", "Testing", uuid("enc-type9-uuid")));
+		}
+	}
+
+	@Component
+	public static class TestBundle10 extends AbstractMetadataBundle implements PackageBundle {
+
+		private final PackageDescriptor testPackage = packageFile("test-package-1.zip", null, "5c7fd8e7-e9a5-43a2-8ba5-c7694fc8db4a");
+
+		@Override
+		public Collection<PackageDescriptor> getPackages() {
+			return Collections.singleton(testPackage);
+		}
+
+		@Override
+		public void install() {
+			install(testPackage);
+		}
+	}
+
+	@Component
+	public static class TestBundle11 extends AbstractMetadataBundle {
+		@Override
+		public void install() {
+			install(new InstallLane("encounter types") {
+				@Override
+				public void run() {
+					install(encounterType("Test Encounter 11", "Testing", uuid("enc-type11-uuid")));
+				}
+			}, new InstallLane("visit types") {
+				@Override
+				public void run() {
+					install(visitType("Test Visit 11", "Testing", uuid("visit-type11-uuid")));
+				}
+			});
+
+			// Check objects from lanes can be used once they have finished
+			existing(VisitType.class, uuid("visit-type11-uuid"));
+			install(encounterType("Test Encounter 11b", "Testing", uuid("enc-type11b-uuid")));
+		}
+	}
+
+	@Component
+	public static class TestBundle12 extends AbstractMetadataBundle {
+		@Override
+		public void install() {
+			Context.getEncounterService().getEncounterType(1).setDescription("Changed directly");
+		}
+	}
+
+	@Component
+	public static class TestBundle13 extends AbstractMetadataBundle {
+		@Override
+		public void install() {
+			install(encounterType("Test Encounter 13", "Testing", uuid("enc-type13-uuid")));
+
+			install(new InstallLane("visit types") {
+				@Override
+				public void run() {
+					install(visitType("Test Visit 13", "Testing", uuid("visit-type13-uuid")));
+				}
+			});
+		}
+	}
+
+	@Component
+	public static class TestBundle14 extends AbstractMetadataBundle {
+
+		final Set<String> laneThreads = Collections.synchronizedSet(new HashSet<String>());
+
+		@Override
+		public void install() {
+			install(new InstallLane("first") {
+				@Override
+				public void run() {
+					laneThreads.add(Thread.currentThread().getName());
+				}
+			}, new InstallLane("second") {
+				@Override
+				public void run() {
+					laneThreads.add(Thread.currentThread().getName());
+				}
+			});
+		}
+	}
+
+	/**
+	 * Handler which only implements the handler interface, like those written before batch fetching and comparing of
+	 * objects were supported
+	 */
+	public static class SimpleEncounterTypeHandler implements ObjectDeployHandler<EncounterType> {
+
+		@Override
+		public String getIdentifier(EncounterType obj) {
+			return obj.getUuid();
+		}
+
+		@Override
+		public EncounterType fetch(String identifier) {
+			return Context.getEncounterService().getEncounterTypeByUuid(identifier);
+		}
+
+		@Override
+		public EncounterType findAlternateMatch(EncounterType obj) {
+			return null;
+		}
+
+		@Override
+		public EncounterType save(EncounterType obj) {
+			return Context.getEncounterService().saveEncounterType(obj);
+		}
+
+		@Override
+		public void uninstall(EncounterType obj, String reason) {
+			Context.getEncounterService().retireEncounterType(obj, reason);
+		}
+
+		@Override
+		public void overwrite(EncounterType incoming, EncounterType existing) {
+			existing.setName(incoming.getName());
+			existing.setDescription(incoming.getDescription());
+		}
+	}
+
 	/**
 	 * Converts a simple identifier to a valid UUID (at least by our standards)
 	 * @return the UUID
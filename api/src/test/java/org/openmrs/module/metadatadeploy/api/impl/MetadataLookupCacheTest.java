@@ -0,0 +1,81 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.EncounterType;
+import org.openmrs.Location;
+import org.openmrs.module.metadatadeploy.handler.impl.EncounterTypeDeployHandler;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests for {@link MetadataLookupCache}
+ */
+public class MetadataLookupCacheTest {
+
+	private EncounterTypeDeployHandler handler = new EncounterTypeDeployHandler();
+
+	/**
+	 * @see MetadataLookupCache#get(org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler, String)
+	 */
+	@Test
+	public void get_shouldEvictLeastRecentlyUsedObjectWhenFull() {
+		MetadataLookupCache cache = new MetadataLookupCache(Arrays.<Class<?>>asList(EncounterType.class), 2, 60000);
+
+		cache.put(handler, "type1", 1);
+		cache.put(handler, "type2", 2);
+		Assert.assertThat(cache.get(handler, "type1"), is((Serializable) 1));
+
+		cache.put(handler, "type3", 3);
+
+		Assert.assertThat(cache.get(handler, "type2"), nullValue());
+		Assert.assertThat(cache.get(handler, "type1"), is((Serializable) 1));
+		Assert.assertThat(cache.get(handler, "type3"), is((Serializable) 3));
+
+		Assert.assertThat(cache.getSize(), is(2));
+		Assert.assertThat(cache.getEvictions(), is(1L));
+	}
+
+	/**
+	 * @see MetadataLookupCache#get(org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler, String)
+	 */
+	@Test
+	public void get_shouldNotReturnExpiredObjects() {
+		MetadataLookupCache cache = new MetadataLookupCache(Arrays.<Class<?>>asList(EncounterType.class), 2, 0);
+
+		cache.put(handler, "type1", 1);
+
+		Assert.assertThat(cache.get(handler, "type1"), nullValue());
+		Assert.assertThat(cache.getSize(), is(0));
+		Assert.assertThat(cache.getEvictions(), is(1L));
+	}
+
+	/**
+	 * @see MetadataLookupCache#isCached(Class)
+	 */
+	@Test
+	public void isCached_shouldOnlyReturnTrueForConfiguredTypes() {
+		MetadataLookupCache cache = new MetadataLookupCache(Arrays.<Class<?>>asList(EncounterType.class), 2, 60000);
+
+		Assert.assertThat(cache.isCached(EncounterType.class), is(true));
+		Assert.assertThat(cache.isCached(Location.class), is(false));
+	}
+}
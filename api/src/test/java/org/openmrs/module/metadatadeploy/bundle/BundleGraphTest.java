@@ -0,0 +1,135 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.APIException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link BundleGraph}
+ */
+public class BundleGraphTest {
+
+	private BundleA bundleA = new BundleA();
+	private BundleB bundleB = new BundleB();
+	private BundleC bundleC = new BundleC();
+	private BundleD bundleD = new BundleD();
+
+	/**
+	 * @see BundleGraph#BundleGraph(java.util.Collection, java.util.Map)
+	 */
+	@Test
+	public void integration() {
+		List<MetadataBundle> bundles = Arrays.<MetadataBundle>asList(bundleD, bundleC, bundleB, bundleA);
+		BundleGraph graph = new BundleGraph(bundles, map(bundles));
+
+		Assert.assertThat(graph.size(), is(4));
+		Assert.assertThat(graph.getInstallOrder(), contains((MetadataBundle) bundleA, bundleB, bundleC, bundleD));
+
+		Assert.assertThat(graph.getRequirements(bundleA), empty());
+		Assert.assertThat(graph.getRequirements(bundleD), containsInAnyOrder((MetadataBundle) bundleB, bundleC));
+
+		Assert.assertThat(graph.getDependents(bundleA), containsInAnyOrder((MetadataBundle) bundleB, bundleC));
+		Assert.assertThat(graph.getDependents(bundleD), empty());
+	}
+
+	/**
+	 * @see BundleGraph#BundleGraph(java.util.Collection, java.util.Map)
+	 */
+	@Test
+	public void shouldOnlyIncludeRequiredBundles() {
+		List<MetadataBundle> all = Arrays.<MetadataBundle>asList(bundleA, bundleB, bundleC, bundleD);
+		BundleGraph graph = new BundleGraph(Collections.<MetadataBundle>singleton(bundleB), map(all));
+
+		Assert.assertThat(graph.getInstallOrder(), contains((MetadataBundle) bundleA, bundleB));
+	}
+
+	/**
+	 * @see BundleGraph#BundleGraph(java.util.Collection, java.util.Map)
+	 */
+	@Test(expected = APIException.class)
+	public void shouldThrowExceptionForMissingRequirement() {
+		List<MetadataBundle> bundles = Arrays.<MetadataBundle>asList(bundleB);
+		new BundleGraph(bundles, map(bundles));
+	}
+
+	/**
+	 * @see BundleGraph#BundleGraph(java.util.Collection, java.util.Map)
+	 */
+	@Test
+	public void shouldThrowExceptionForCyclicRequirements() {
+		List<MetadataBundle> bundles = Arrays.<MetadataBundle>asList(new CyclicBundle1(), new CyclicBundle2());
+
+		try {
+			new BundleGraph(bundles, map(bundles));
+			Assert.fail();
+		}
+		catch (APIException ex) {
+			Assert.assertThat(ex.getMessage(), containsString("CyclicBundle1 -> CyclicBundle2 -> CyclicBundle1"));
+		}
+	}
+
+	private static Map<Class<? extends MetadataBundle>, MetadataBundle> map(List<MetadataBundle> bundles) {
+		Map<Class<? extends MetadataBundle>, MetadataBundle> all = new HashMap<Class<? extends MetadataBundle>, MetadataBundle>();
+		for (MetadataBundle bundle : bundles) {
+			all.put(bundle.getClass(), bundle);
+		}
+		return all;
+	}
+
+	public static class BundleA implements MetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ BundleA.class })
+	public static class BundleB implements MetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ BundleA.class })
+	public static class BundleC implements MetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ BundleB.class, BundleC.class })
+	public static class BundleD implements MetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ CyclicBundle2.class })
+	public static class CyclicBundle1 implements MetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ CyclicBundle1.class })
+	public static class CyclicBundle2 implements MetadataBundle {
+		@Override
+		public void install() { }
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.ProgramWorkflow;
+import org.openmrs.ProgramWorkflowState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link CollectionMerger}
+ */
+public class CollectionMergerTest {
+
+	private CollectionMerger<ConceptMap> merger = new CollectionMerger<ConceptMap>(new HashSet<String>(Arrays.asList("conceptMapId", "concept")));
+
+	/**
+	 * @see CollectionMerger#merge(java.util.Collection, java.util.Collection)
+	 */
+	@Test
+	public void merge_shouldOnlyChangeChildrenWhichDiffer() {
+		ConceptMap existing1 = map("map1", "term1", 1), existing2 = map("map2", "term2", 2), existing3 = map("map3", "term3", 3);
+		ConceptReferenceTerm existing1Term = existing1.getConceptReferenceTerm();
+		List<ConceptMap> existing = new ArrayList<ConceptMap>(Arrays.asList(existing1, existing2, existing3));
+
+		ConceptMap incoming2 = map("map2", "term2-changed", null), incoming4 = map("map4", "term4", null);
+		List<ConceptMap> incoming = Arrays.asList(map("map1", "term1", null), incoming2, incoming4);
+
+		Assert.assertThat(merger.differs(existing, incoming), is(true));
+		Assert.assertThat(merger.merge(existing, incoming), is(3)); // Updated map2, removed map3, added map4
+
+		Assert.assertThat(existing, contains(existing1, existing2, incoming4));
+		Assert.assertThat(existing1.getConceptReferenceTerm(), sameInstance(existing1Term)); // Unchanged so not touched
+		Assert.assertThat(existing2.getConceptReferenceTerm(), sameInstance(incoming2.getConceptReferenceTerm()));
+		Assert.assertThat(existing2.getId(), is(2));
+
+		Assert.assertThat(merger.differs(existing, incoming), is(false));
+		Assert.assertThat(merger.merge(existing, incoming), is(0));
+	}
+
+	/**
+	 * @see CollectionMerger#merge(java.util.Collection, java.util.Collection)
+	 */
+	@Test
+	public void merge_shouldMergeAndRemoveDescendants() {
+		final List<OpenmrsObject> removed = new ArrayList<OpenmrsObject>();
+
+		CollectionMerger<ProgramWorkflow> workflowMerger = new CollectionMerger<ProgramWorkflow>(new HashSet<String>(Arrays.asList("programWorkflowId", "program", "states"))) {
+			@Override
+			protected void remove(ProgramWorkflow existingItem, Iterator<ProgramWorkflow> iter) {
+				removed.add(existingItem);
+			}
+		};
+		workflowMerger.addChildren(new CollectionMerger.ChildAccessor<ProgramWorkflow, ProgramWorkflowState>() {
+			@Override
+			public Collection<ProgramWorkflowState> getChildren(ProgramWorkflow workflow) {
+				return workflow.getStates();
+			}
+		}, new CollectionMerger<ProgramWorkflowState>(new HashSet<String>(Arrays.asList("programWorkflowStateId", "programWorkflow"))) {
+			@Override
+			protected void remove(ProgramWorkflowState existingItem, Iterator<ProgramWorkflowState> iter) {
+				removed.add(existingItem);
+			}
+		});
+
+		ProgramWorkflowState existingState1 = state("state1", false), existingState2 = state("state2", false), existingState3 = state("state3", false);
+		ProgramWorkflow existingWorkflow1 = workflow("workflow1", existingState1, existingState2);
+		ProgramWorkflow existingWorkflow2 = workflow("workflow2", existingState3);
+		List<ProgramWorkflow> existing = new ArrayList<ProgramWorkflow>(Arrays.asList(existingWorkflow1, existingWorkflow2));
+
+		// Workflow 1 has a changed state and a new state, and workflow 2 has been removed
+		ProgramWorkflow incomingWorkflow1 = workflow("workflow1", state("state1", false), state("state2", true), state("state4", false));
+		List<ProgramWorkflow> incoming = Arrays.asList(incomingWorkflow1);
+
+		Assert.assertThat(workflowMerger.differs(existing, incoming), is(true));
+		Assert.assertThat(workflowMerger.merge(existing, incoming), is(4));
+
+		Assert.assertThat(existingState2.getInitial(), is(true));
+		Assert.assertThat(existingWorkflow1.getStates(), hasSize(3));
+		Assert.assertThat(removed, contains((OpenmrsObject) existingState3, existingWorkflow2));
+	}
+
+	private static ProgramWorkflow workflow(String uuid, ProgramWorkflowState... states) {
+		ProgramWorkflow workflow = new ProgramWorkflow();
+		workflow.setUuid(uuid);
+		for (ProgramWorkflowState state : states) {
+			workflow.addState(state);
+		}
+		return workflow;
+	}
+
+	private static ProgramWorkflowState state(String uuid, boolean initial) {
+		ProgramWorkflowState state = new ProgramWorkflowState();
+		state.setUuid(uuid);
+		state.setInitial(initial);
+		state.setTerminal(false);
+		return state;
+	}
+
+	private static ConceptMap map(String uuid, String termUuid, Integer id) {
+		ConceptReferenceTerm term = new ConceptReferenceTerm();
+		term.setUuid(termUuid);
+
+		ConceptMap map = new ConceptMap();
+		map.setUuid(uuid);
+		map.setConceptReferenceTerm(term);
+		map.setId(id);
+		return map;
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.Location;
+import org.openmrs.Patient;
+import org.openmrs.annotation.Handler;
+import org.openmrs.api.APIException;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Tests for {@link ObjectDeployHandlers}
+ */
+public class ObjectDeployHandlersTest {
+
+	private ObjectDeployHandlers handlers;
+
+	@Before
+	public void setup() {
+		Set<ObjectDeployHandler> components = new HashSet<ObjectDeployHandler>();
+		components.add(new LocationHandler());
+		components.add(new BetterLocationHandler());
+		components.add(new ConceptHandler());
+
+		handlers = new ObjectDeployHandlers();
+		handlers.setHandlers(components);
+	}
+
+	/**
+	 * @see ObjectDeployHandlers#getHandler(Class)
+	 */
+	@Test
+	public void getHandler_shouldReturnHandlerWithLowestOrder() {
+		Assert.assertThat(handlers.getHandler(Location.class), instanceOf(BetterLocationHandler.class));
+	}
+
+	/**
+	 * @see ObjectDeployHandlers#getHandler(Class)
+	 */
+	@Test
+	public void getHandler_shouldReturnHandlerOfNearestSuperclass() {
+		Assert.assertThat(handlers.getHandler(ConceptNumeric.class), instanceOf(ConceptHandler.class));
+		Assert.assertThat(handlers.getHandler(ConceptSubclass.class), instanceOf(ConceptHandler.class));
+
+		// Check again now that result has been memoized
+		Assert.assertThat(handlers.getHandler(ConceptSubclass.class), instanceOf(ConceptHandler.class));
+	}
+
+	/**
+	 * @see ObjectDeployHandlers#getHandler(Class)
+	 */
+	@Test
+	public void getHandler_shouldReturnNullIfNoHandlerForClass() {
+		Assert.assertThat(handlers.getHandler(Patient.class), nullValue());
+	}
+
+	/**
+	 * @see ObjectDeployHandlers#register(ObjectDeployHandler)
+	 */
+	@Test
+	public void register_shouldReplaceHandlerWithHigherOrder() {
+		// Memoize the current handler of a subclass
+		Assert.assertThat(handlers.getHandler(ConceptSubclass.class), instanceOf(ConceptHandler.class));
+
+		BetterConceptHandler better = new BetterConceptHandler();
+		handlers.register(better);
+
+		Assert.assertThat(handlers.getHandler(Concept.class), instanceOf(BetterConceptHandler.class));
+		Assert.assertThat(handlers.getHandler(ConceptSubclass.class), instanceOf(BetterConceptHandler.class));
+
+		// Check runtime registrations survive handlers being set again
+		handlers.setHandlers(new HashSet<ObjectDeployHandler>(Collections.<ObjectDeployHandler>singleton(new ConceptHandler())));
+		Assert.assertThat(handlers.getHandler(Concept.class), instanceOf(BetterConceptHandler.class));
+		Assert.assertThat(handlers.getHandler(Location.class), nullValue());
+
+		Assert.assertThat(handlers.unregister(better), is(true));
+		Assert.assertThat(handlers.unregister(better), is(false));
+		Assert.assertThat(handlers.getHandler(ConceptSubclass.class), instanceOf(ConceptHandler.class));
+	}
+
+	/**
+	 * @see ObjectDeployHandlers#register(ObjectDeployHandler)
+	 */
+	@Test(expected = APIException.class)
+	public void register_shouldThrowExceptionIfHandlerNotAnnotated() {
+		handlers.register(new UnannotatedHandler());
+	}
+
+	/**
+	 * Simulates a proxy class
+	 */
+	public static class ConceptSubclass extends ConceptNumeric { }
+
+	public static abstract class TestHandler extends AbstractObjectDeployHandler<Location> {
+		@Override
+		public Location fetch(String identifier) { return null; }
+
+		@Override
+		public Location save(Location obj) { return obj; }
+
+		@Override
+		public void uninstall(Location obj, String reason) { }
+	}
+
+	@Handler(supports = { Location.class }, order = 10)
+	public static class LocationHandler extends TestHandler { }
+
+	@Handler(supports = { Location.class }, order = 1)
+	public static class BetterLocationHandler extends TestHandler { }
+
+	@Handler(supports = { Concept.class })
+	public static class ConceptHandler extends AbstractObjectDeployHandler<Concept> {
+		@Override
+		public Concept fetch(String identifier) { return null; }
+
+		@Override
+		public Concept save(Concept obj) { return obj; }
+
+		@Override
+		public void uninstall(Concept obj, String reason) { }
+	}
+
+	@Handler(supports = { Concept.class }, order = -1)
+	public static class BetterConceptHandler extends ConceptHandler { }
+
+	public static class UnannotatedHandler extends TestHandler { }
+}
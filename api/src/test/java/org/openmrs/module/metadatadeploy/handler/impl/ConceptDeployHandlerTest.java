@@ -14,6 +14,7 @@
 
 package org.openmrs.module.metadatadeploy.handler.impl;
 
+import org.hibernate.SessionFactory;
 import org.junit.Test;
 import org.openmrs.Concept;
 import org.openmrs.ConceptClass;
@@ -42,6 +43,7 @@ import java.util.Locale;
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.collection.IsEmptyCollection.empty;
@@ -59,6 +61,9 @@ public class ConceptDeployHandlerTest extends BaseModuleContextSensitiveTest {
     @Autowired
     private ConceptService conceptService;
 
+    @Autowired
+    private SessionFactory sessionFactory;
+
     private static final String UUID = "f35c9fde-cdc3-11e4-9dcf-b36e1005e77b";
 
     @Test
@@ -236,6 +241,43 @@ public class ConceptDeployHandlerTest extends BaseModuleContextSensitiveTest {
         assertThat(updated.getName().getName(), is("WEIGHT (KG)"));
     }
 
+    @Test
+    public void testFetchNumericProxy() throws Exception {
+        // Reference weight concept so that the session may hold a Concept proxy for it
+        sessionFactory.getCurrentSession().load(Concept.class, 5089);
+
+        Concept fetched = deployService.fetchObject(Concept.class, "c607c80f-1ea9-4da3-bb88-6276ce8868dd");
+        assertThat(fetched, instanceOf(ConceptNumeric.class));
+    }
+
+    @Test
+    public void testUpdateNumericInBulk() throws Exception {
+        String weightUuid = "c607c80f-1ea9-4da3-bb88-6276ce8868dd";
+        deployService.installObjects(Arrays.<Concept>asList(
+                new ConceptNumericBuilder(weightUuid)
+                        .datatype(conceptService.getConceptDatatypeByName("Numeric"))
+                        .conceptClass(existing(ConceptClass.class, "a82ef63c-e4e4-48d6-988a-fdd74d7541a7"))
+                        .name(new ConceptName("WEIGHT (KG)", Locale.ENGLISH))
+                        .lowAbsolute(0d)
+                        .hiAbsolute(null)
+                        .precise(true)
+                        .build(),
+                new ConceptBuilder(UUID)
+                        .datatype(existing(ConceptDatatype.class, "8d4a4ab4-c2cc-11de-8d13-0010c6dffd0f"))
+                        .conceptClass(existing(ConceptClass.class, "a82ef63c-e4e4-48d6-988a-fdd74d7541a7"))
+                        .name(new ConceptName("Bulk concept", Locale.ENGLISH))
+                        .build()
+        ));
+
+        ConceptNumeric updated = (ConceptNumeric) conceptService.getConceptByUuid(weightUuid);
+        assertThat(updated.getLowAbsolute(), is(0d));
+        assertThat(updated.getHiAbsolute(), nullValue());
+        assertThat(conceptService.getConceptByUuid(UUID).getName().getName(), is("Bulk concept"));
+
+        // Check everything can be persisted
+        Context.flushSession();
+    }
+
     @Test
     public void testRetire() throws Exception {
         executeDataSet("concept/existingConcepts.xml");
@@ -25,6 +25,9 @@ import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.encounterType;
@@ -128,4 +131,52 @@ public class GlobalPropertyDeployHandlerTest extends BaseModuleContextSensitiveT
 			return StringUtils.isNotEmpty(serializedValue) ? Context.getEncounterService().getEncounterType(Integer.valueOf(serializedValue)) : null;
 		}
 	}
+
+	/**
+	 * Tests that a property which only differs by UUID keeps it's existing UUID
+	 */
+	@Test
+	public void integration_shouldKeepExistingUuid() {
+		GlobalProperty original = globalProperty("test.property", "Testing", "Value");
+		original.setUuid("obj1-uuid");
+		deployService.installObject(original);
+
+		GlobalProperty incoming = globalProperty("test.property", "Testing", "Value");
+		incoming.setUuid("obj2-uuid");
+		GlobalProperty installed = deployService.installObject(incoming);
+
+		Assert.assertThat(installed.getUuid(), is("obj1-uuid"));
+		Assert.assertThat(Context.getAdministrationService().getGlobalPropertyObject("test.property").getUuid(), is("obj1-uuid"));
+
+		// Check other changes are still applied without changing the UUID
+		incoming = globalProperty("test.property", "New desc", "Value");
+		incoming.setUuid("obj2-uuid");
+		installed = deployService.installObject(incoming);
+
+		Assert.assertThat(installed.getDescription(), is("New desc"));
+		Assert.assertThat(installed.getUuid(), is("obj1-uuid"));
+	}
+
+	/**
+	 * Tests setting properties in bulk
+	 */
+	@Test
+	public void setGlobalProperties_shouldOnlyWriteChangedProperties() {
+		deployService.installObject(globalProperty("test.property1", "Testing", "Value1"));
+		deployService.installObject(globalProperty("test.property2", "Testing", "Value2"));
+
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put("test.property1", "Value1");
+		properties.put("test.property2", "New value2");
+		properties.put("test.property3", "Value3");
+
+		Assert.assertThat(deployService.setGlobalProperties(properties), is(2));
+
+		Assert.assertThat(Context.getAdministrationService().getGlobalProperty("test.property1"), is("Value1"));
+		Assert.assertThat(Context.getAdministrationService().getGlobalProperty("test.property2"), is("New value2"));
+		Assert.assertThat(Context.getAdministrationService().getGlobalProperty("test.property3"), is("Value3"));
+
+		// Check setting again changes nothing
+		Assert.assertThat(deployService.setGlobalProperties(properties), is(0));
+	}
 }
\ No newline at end of file
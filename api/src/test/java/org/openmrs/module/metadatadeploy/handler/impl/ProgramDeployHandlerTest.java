@@ -21,12 +21,14 @@ import org.openmrs.ProgramWorkflow;
 import org.openmrs.ProgramWorkflowState;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
+import org.openmrs.module.metadatadeploy.handler.InstallScope;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.Collections;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.program;
@@ -186,4 +188,52 @@ public class ProgramDeployHandlerTest extends BaseModuleContextSensitiveTest {
 		// Check everything can be persisted
 		Context.flushSession();
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Tests that alternate matches are found by name within an install scope, including programs saved or changed in
+	 * that scope
+	 */
+	@Test
+	public void integration_shouldFindAlternateMatchesUsingIndex() {
+		final String MALARIA_PROGRAM_CONCEPT_UUID = "f923524a-b90c-4870-a948-4125638606fd";
+
+		InstallScope scope = InstallScope.open();
+		try {
+			deployService.installObject(program("Indexed name", "Testing", MALARIA_PROGRAM_CONCEPT_UUID, null, "obj3-uuid"));
+			Program created = Context.getProgramWorkflowService().getProgramByUuid("obj3-uuid");
+
+			// Check match on name of program saved in this scope
+			deployService.installObject(program("Indexed name", "Testing", MALARIA_PROGRAM_CONCEPT_UUID, null, "obj4-uuid"));
+			Program updated = Context.getProgramWorkflowService().getProgramByUuid("obj4-uuid");
+			assertThat(updated.getId(), is(created.getId()));
+
+			// Check renamed program is matched on it's new name only
+			deployService.installObject(program("Renamed", "Testing", MALARIA_PROGRAM_CONCEPT_UUID, null, "obj4-uuid"));
+			deployService.installObject(program("Indexed name", "Testing", MALARIA_PROGRAM_CONCEPT_UUID, null, "obj5-uuid"));
+			Program other = Context.getProgramWorkflowService().getProgramByUuid("obj5-uuid");
+			assertThat(other.getId(), is(not(created.getId())));
+
+			deployService.installObject(program("Renamed", "Testing", MALARIA_PROGRAM_CONCEPT_UUID, null, "obj6-uuid"));
+			updated = Context.getProgramWorkflowService().getProgramByUuid("obj6-uuid");
+			assertThat(updated.getId(), is(created.getId()));
+
+			// Check program saved directly through the service is still matched
+			Program direct = Context.getProgramWorkflowService().saveProgram(program("Direct", "Testing", MALARIA_PROGRAM_CONCEPT_UUID, null, "obj7-uuid"));
+			deployService.installObject(program("Direct", "Testing", MALARIA_PROGRAM_CONCEPT_UUID, null, "obj8-uuid"));
+			updated = Context.getProgramWorkflowService().getProgramByUuid("obj8-uuid");
+			assertThat(updated.getId(), is(direct.getId()));
+
+			// Check program renamed directly is matched on it's new name once flushed
+			direct.setName("Renamed directly");
+			Context.flushSession();
+			deployService.installObject(program("Renamed directly", "Testing", MALARIA_PROGRAM_CONCEPT_UUID, null, "obj9-uuid"));
+			updated = Context.getProgramWorkflowService().getProgramByUuid("obj9-uuid");
+			assertThat(updated.getId(), is(direct.getId()));
+		}
+		finally {
+			scope.close();
+		}
+
+		Context.flushSession();
+	}
+}
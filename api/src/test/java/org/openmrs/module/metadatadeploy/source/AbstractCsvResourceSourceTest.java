@@ -29,8 +29,58 @@ public class AbstractCsvResourceSourceTest {
 
 	@Test
 	public void integration() throws Exception {
-		AbstractCsvResourceSource<Location> csvSource = new TestCsvSource();
+		checkSource(new TestCsvSource(0));
+	}
+
+	@Test
+	public void integration_shouldReadAheadOnBackgroundThread() throws Exception {
+		checkSource(new TestCsvSource(2));
+	}
+
+	@Test
+	public void shutdown_shouldStopReadAheadThreadIfSourceIsNotExhausted() throws Exception {
+		TestCsvSource csvSource = new TestCsvSource(1);
+		Assert.assertThat(getReadAheadThread(), nullValue()); // Not started until the first fetch
+
+		Assert.assertThat(csvSource.fetchNext().getName(), is("Location #1"));
+		Thread readAheadThread = getReadAheadThread();
+		Assert.assertThat(readAheadThread, notNullValue());
+
+		// Read-ahead thread will be waiting for space in the queue
+		csvSource.shutdown();
+		readAheadThread.join(5000);
+
+		Assert.assertThat(readAheadThread.isAlive(), is(false));
+		Assert.assertThat(csvSource.fetchNext(), nullValue());
+	}
 
+	@Test
+	public void shutdown_shouldCloseSourceOnce() throws Exception {
+		final int[] closes = { 0 };
+		AbstractCsvResourceSource<Location> csvSource = new TestCsvSource(2) {
+			@Override
+			protected void close() throws IOException {
+				closes[0]++;
+				super.close();
+			}
+		};
+
+		checkSource(csvSource);
+		csvSource.shutdown();
+
+		Assert.assertThat(closes[0], is(1));
+	}
+
+	private Thread getReadAheadThread() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("metadatadeploy-csv-test-location-source.csv") && thread.isAlive()) {
+				return thread;
+			}
+		}
+		return null;
+	}
+
+	private void checkSource(AbstractCsvResourceSource<Location> csvSource) throws Exception {
 		Location location1 = csvSource.fetchNext();
 		Assert.assertThat(location1.getName(), is("Location #1"));
 		Assert.assertThat(location1.getDescription(), is("Testing"));
@@ -46,13 +96,23 @@ public class AbstractCsvResourceSourceTest {
 		Assert.assertThat(csvSource.fetchNext(), nullValue());
 	}
 
+	@Test(expected = IOException.class)
+	public void shouldThrowExceptionIfResourceDoesNotExist() throws Exception {
+		new AbstractCsvResourceSource<Location>("xxx.csv", true) {
+			@Override
+			protected Location parseLine(String[] line) {
+				return null;
+			}
+		};
+	}
+
 	/**
 	 * Implementation for testing
 	 */
 	protected class TestCsvSource extends AbstractCsvResourceSource<Location> {
 
-		public TestCsvSource() throws IOException {
-			super("test-location-source.csv", true);
+		public TestCsvSource(int readAhead) throws IOException {
+			super("test-location-source.csv", true, readAhead);
 		}
 
 		@Override
@@ -0,0 +1,89 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.source;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link ParallelParseSource}
+ */
+public class ParallelParseSourceTest extends BaseModuleContextSensitiveTest {
+
+	@Test
+	public void integration() throws Exception {
+		ParallelParseSource<Location> source = new ParallelParseSource<Location>(new TestCsvSource(), 2, 1, 2);
+
+		Location location1 = source.fetchNext();
+		Assert.assertThat(location1.getName(), is("Location #1"));
+		Assert.assertThat(location1.getDescription(), startsWith("metadatadeploy-parse-"));
+
+		Assert.assertThat(source.fetchNext().getName(), is("Location #2"));
+		Assert.assertThat(source.fetchNext().getName(), is("Location #3"));
+		Assert.assertThat(source.fetchNext(), nullValue());
+	}
+
+	@Test
+	public void fetchNext_shouldStopWorkerThreadsOnceSourceIsExhausted() throws Exception {
+		ParallelParseSource<Location> source = new ParallelParseSource<Location>(new TestCsvSource(), 2, 1, 2);
+
+		while (source.fetchNext() != null) {
+		}
+
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("metadatadeploy-parse-")) {
+				thread.join(5000);
+				Assert.assertThat(thread.isAlive(), is(false));
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void fetchNext_shouldThrowExceptionFromParseLine() throws Exception {
+		ParallelParseSource<Location> source = new ParallelParseSource<Location>(new TestCsvSource() {
+			@Override
+			protected Location parseLine(String[] line) {
+				throw new IllegalStateException();
+			}
+		}, 2);
+
+		source.fetchNext();
+	}
+
+	/**
+	 * Implementation for testing which records the parsing thread as the location description
+	 */
+	protected class TestCsvSource extends AbstractCsvResourceSource<Location> {
+
+		public TestCsvSource() throws IOException {
+			super("test-location-source.csv", true);
+		}
+
+		@Override
+		protected Location parseLine(String[] line) {
+			Location location = new Location();
+			location.setName(line[0]);
+			location.setDescription(Thread.currentThread().getName());
+			location.setUuid(line[2]);
+			return location;
+		}
+	}
+}
@@ -24,6 +24,7 @@ import org.openmrs.util.OpenmrsUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.hamcrest.Matchers.*;
@@ -61,6 +62,37 @@ public class MetadataSynchronizationRunnerTest extends BaseModuleContextSensitiv
 		Assert.assertThat(location2.getName(), is("Location #2"));
 	}
 
+	@Test
+	public void integration_shouldSynchronizeUsingProjections() throws Exception {
+		TestProjectedSynchronization sync1 = new TestProjectedSynchronization();
+		MetadataSynchronizationRunner<Location> runner1 = new MetadataSynchronizationRunner<Location>(new TestCsvSource(), sync1);
+		runner1.setBatchSize(2);
+		SyncResult<Location> result1 = runner1.run();
+
+		Assert.assertThat(result1.getProcessed(), is(3));
+
+		Assert.assertThat(result1.getCreatedCount(), is(3));
+		Assert.assertThat(result1.getUpdatedCount(), is(0));
+		Assert.assertThat(result1.getRetiredCount(), is(2));
+		Assert.assertThat(result1.getCreated(), hasSize(0)); // Projected results don't keep objects
+		Assert.assertThat(sync1.fetchedIds, hasSize(2)); // Only the retired objects needed fetching
+
+		Location location2 = locationService.getLocationByUuid("C271874A-DACE-480A-8D55-840A96ADA70F");
+		location2.setName("Wrong name");
+		locationService.saveLocation(location2);
+
+		TestProjectedSynchronization sync2 = new TestProjectedSynchronization();
+		SyncResult<Location> result2 = new MetadataSynchronizationRunner<Location>(new TestCsvSource(), sync2).run();
+
+		Assert.assertThat(result2.getCreatedCount(), is(0));
+		Assert.assertThat(result2.getUpdatedCount(), is(1));
+		Assert.assertThat(result2.getRetiredCount(), is(0));
+		Assert.assertThat(result2.getUpdated(), hasSize(0));
+		Assert.assertThat(sync2.fetchedIds, contains(location2.getId())); // Only the modified object needed fetching
+
+		Assert.assertThat(location2.getName(), is("Location #2"));
+	}
+
 	/**
 	 * Location source for testing
 	 */
@@ -103,4 +135,32 @@ public class MetadataSynchronizationRunnerTest extends BaseModuleContextSensitiv
 			return !objectsMatch;
 		}
 	}
+
+	/**
+	 * Location UUID based synchronization using projections for testing
+	 */
+	protected class TestProjectedSynchronization extends TestUuidSynchronization implements ProjectedObjectSynchronization<Location> {
+
+		protected List<Integer> fetchedIds = new ArrayList<Integer>();
+
+		@Override
+		public List<SyncProjection> fetchAllExistingProjections() {
+			List<SyncProjection> projections = new ArrayList<SyncProjection>();
+			for (Location location : locationService.getAllLocations(true)) {
+				projections.add(new SyncProjection(location.getUuid(), location.getId(), getObjectContentHash(location), location.isRetired()));
+			}
+			return projections;
+		}
+
+		@Override
+		public Object getObjectContentHash(Location obj) {
+			return obj.getName() + "|" + obj.getDescription();
+		}
+
+		@Override
+		public Location fetchExisting(Integer id) {
+			fetchedIds.add(id);
+			return locationService.getLocation(id);
+		}
+	}
 }
\ No newline at end of file
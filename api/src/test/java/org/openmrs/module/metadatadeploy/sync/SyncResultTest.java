@@ -32,5 +32,34 @@ public class SyncResultTest {
 		Assert.assertThat(result.getCreated(), hasSize(0));
 		Assert.assertThat(result.getUpdated(), hasSize(0));
 		Assert.assertThat(result.getRetired(), hasSize(0));
+		Assert.assertThat(result.getThroughput(), is(0.0));
+
+		result.setProcessed(300);
+		result.setDuration(1500);
+
+		Assert.assertThat(result.getThroughput(), is(200.0));
+
+		result.addCreated(new Location());
+		result.addRetired(new Location());
+
+		Assert.assertThat(result.getCreated(), hasSize(1));
+		Assert.assertThat(result.getCreatedCount(), is(1));
+		Assert.assertThat(result.getRetired(), hasSize(1));
+		Assert.assertThat(result.getRetiredCount(), is(1));
+	}
+
+	@Test
+	public void integration_shouldOnlyCountObjectsIfNotKeepingThem() {
+		SyncResult<Location> result = new SyncResult<Location>(false);
+
+		result.addCreated(new Location());
+		result.addUpdated(new Location());
+		result.addUpdated(new Location());
+
+		Assert.assertThat(result.getCreated(), hasSize(0));
+		Assert.assertThat(result.getCreatedCount(), is(1));
+		Assert.assertThat(result.getUpdated(), hasSize(0));
+		Assert.assertThat(result.getUpdatedCount(), is(2));
+		Assert.assertThat(result.getRetiredCount(), is(0));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.test.context.TestContextManager;
+
+import java.lang.reflect.Method;
+
+/**
+ * Bootstraps the same Spring context and in-memory H2 database as the module tests, so that benchmarks can exercise
+ * code which needs services and a Hibernate session. Everything done between {@link #start()} and {@link #stop()}
+ * happens in one transaction which is rolled back at the end.
+ */
+public class BenchmarkContext extends BaseModuleContextSensitiveTest {
+
+	private TestContextManager testContextManager;
+
+	private Method method;
+
+	/**
+	 * Loads the application context, starts a transaction and authenticates with the standard test dataset
+	 * @throws Exception if an error occurs
+	 */
+	public void start() throws Exception {
+		method = BenchmarkContext.class.getMethod("benchmark");
+
+		testContextManager = new TestContextManager(BenchmarkContext.class);
+		testContextManager.beforeTestClass();
+		testContextManager.prepareTestInstance(this);
+		testContextManager.beforeTestMethod(this, method);
+
+		baseSetupWithStandardDataAndAuthentication();
+	}
+
+	/**
+	 * Rolls back the transaction and closes the session
+	 * @throws Exception if an error occurs
+	 */
+	public void stop() throws Exception {
+		testContextManager.afterTestMethod(this, method, null);
+		testContextManager.afterTestClass();
+
+		if (Context.isSessionOpen()) {
+			Context.closeSession();
+		}
+	}
+
+	/**
+	 * Placeholder test method which benchmark transactions are associated with
+	 */
+	public void benchmark() {
+	}
+}
@@ -0,0 +1,188 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptDescription;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptMapType;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptNameType;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.Location;
+import org.openmrs.Program;
+import org.openmrs.ProgramWorkflow;
+import org.openmrs.ProgramWorkflowState;
+
+import java.util.Locale;
+
+/**
+ * Builds deterministic object graphs for benchmarks. Building the same graph twice, once with ids and once without,
+ * gives an existing object and an incoming object with matching UUIDs, as seen during a re-install.
+ */
+public class BenchmarkObjects {
+
+	private static final ConceptSource SOURCE = new ConceptSource();
+
+	private static final ConceptMapType MAP_TYPE = new ConceptMapType();
+
+	static {
+		SOURCE.setUuid(uuid("source"));
+		SOURCE.setName("Benchmark");
+		MAP_TYPE.setUuid(uuid("maptype"));
+		MAP_TYPE.setName("SAME-AS");
+	}
+
+	/**
+	 * Builds a location with only simple fields
+	 * @param persisted true to assign ids as if loaded from the database
+	 * @return the location
+	 */
+	public static Location location(boolean persisted) {
+		Location location = new Location();
+		location.setUuid(uuid("location"));
+		location.setName("Benchmark location");
+		location.setDescription("Benchmark location description");
+		location.setAddress1("1 Benchmark Road");
+		location.setCityVillage("Benchmark");
+		location.setCountry("Benchmark");
+		if (persisted) {
+			location.setId(1);
+		}
+		return location;
+	}
+
+	/**
+	 * Builds a concept with a name and description in each of the given number of locales, and the given number of
+	 * mappings
+	 * @param locales the number of locales
+	 * @param mappings the number of mappings
+	 * @param persisted true to assign ids as if loaded from the database
+	 * @return the concept
+	 */
+	public static Concept concept(int locales, int mappings, boolean persisted) {
+		Concept concept = new Concept();
+		concept.setUuid(uuid("concept"));
+		if (persisted) {
+			concept.setId(1);
+		}
+
+		for (int l = 0; l < locales; ++l) {
+			Locale locale = new Locale("l" + l);
+
+			ConceptName name = new ConceptName("Benchmark concept " + l, locale);
+			name.setUuid(uuid("name" + l));
+			name.setConceptNameType(ConceptNameType.FULLY_SPECIFIED);
+			name.setLocalePreferred(true);
+			concept.addName(name);
+
+			ConceptDescription description = new ConceptDescription("Benchmark description " + l, locale);
+			description.setUuid(uuid("description" + l));
+			concept.addDescription(description);
+
+			if (persisted) {
+				name.setId(l + 1);
+				description.setId(l + 1);
+			}
+		}
+
+		for (int m = 0; m < mappings; ++m) {
+			ConceptReferenceTerm term = new ConceptReferenceTerm();
+			term.setUuid(uuid("term" + m));
+			term.setConceptSource(SOURCE);
+			term.setCode("B" + m);
+
+			ConceptMap map = new ConceptMap();
+			map.setUuid(uuid("map" + m));
+			map.setConceptReferenceTerm(term);
+			map.setConceptMapType(MAP_TYPE);
+			concept.addConceptMapping(map);
+
+			if (persisted) {
+				map.setId(m + 1);
+			}
+		}
+
+		return concept;
+	}
+
+	/**
+	 * Builds a program with the given number of workflows, each with the given number of states
+	 * @param workflows the number of workflows
+	 * @param states the number of states per workflow
+	 * @param persisted true to assign ids as if loaded from the database
+	 * @return the program
+	 */
+	public static Program program(int workflows, int states, boolean persisted) {
+		Program program = new Program();
+		program.setUuid(uuid("program"));
+		program.setName("Benchmark program");
+		program.setConcept(reference(uuid("programconcept")));
+		if (persisted) {
+			program.setId(1);
+		}
+
+		for (int w = 0; w < workflows; ++w) {
+			ProgramWorkflow workflow = new ProgramWorkflow();
+			workflow.setUuid(uuid("workflow" + w));
+			workflow.setConcept(reference(uuid("workflowconcept" + w)));
+			program.addWorkflow(workflow);
+
+			for (int s = 0; s < states; ++s) {
+				ProgramWorkflowState state = new ProgramWorkflowState();
+				state.setUuid(uuid("state" + w + "-" + s));
+				state.setConcept(reference(uuid("stateconcept" + w + "-" + s)));
+				state.setInitial(s == 0);
+				state.setTerminal(s == states - 1);
+				workflow.addState(state);
+
+				if (persisted) {
+					state.setId(w * states + s + 1);
+				}
+			}
+
+			if (persisted) {
+				workflow.setId(w + 1);
+			}
+		}
+
+		return program;
+	}
+
+	/**
+	 * Creates a reference to a concept by UUID
+	 * @param uuid the UUID
+	 * @return the concept
+	 */
+	protected static Concept reference(String uuid) {
+		Concept concept = new Concept();
+		concept.setUuid(uuid);
+		return concept;
+	}
+
+	/**
+	 * Pads a string to the length of a UUID
+	 * @param value the string
+	 * @return the padded string
+	 */
+	public static String uuid(String value) {
+		StringBuilder sb = new StringBuilder(value);
+		while (sb.length() < 36) {
+			sb.append('A');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openmrs.Concept;
+import org.openmrs.module.metadatadeploy.handler.impl.ConceptDeployHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link ConceptDeployHandler#overwrite(Concept, Concept)}, which merges the names, descriptions and
+ * mappings of the incoming concept into the existing concept. Both concepts have the same children so this measures
+ * the matching cost of a re-install where nothing has changed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgs = { "-Xms1g", "-Xmx1g" })
+public class ConceptDeployHandlerBenchmark {
+
+	/**
+	 * The number of locales, each of which has a name and a description
+	 */
+	@Param({ "5", "50" })
+	public int locales;
+
+	/**
+	 * The number of mappings
+	 */
+	@Param({ "10", "200" })
+	public int mappings;
+
+	private ConceptDeployHandler handler = new ConceptDeployHandler();
+
+	private Concept incoming;
+
+	private Concept existing;
+
+	@Setup
+	public void setup() {
+		incoming = BenchmarkObjects.concept(locales, mappings, false);
+		existing = BenchmarkObjects.concept(locales, mappings, true);
+	}
+
+	@Benchmark
+	public Concept overwrite() {
+		handler.overwrite(incoming, existing);
+		return existing;
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openmrs.Location;
+import org.openmrs.module.metadatadeploy.source.AbstractCsvResourceSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link AbstractCsvResourceSource#fetchNext()}. Each invocation reads every row of a 2000 row
+ * resource, so scores are in rows per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgs = { "-Xms1g", "-Xmx1g" })
+public class CsvResourceSourceBenchmark {
+
+	private static final int ROWS = 2000;
+
+	/**
+	 * The number of lines read ahead on a background thread, or zero to read lines on the benchmark thread
+	 */
+	@Param({ "0", "256" })
+	public int readAhead;
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void fetchNext(Blackhole blackhole) throws Exception {
+		LocationCsvSource source = new LocationCsvSource(readAhead);
+		Location location;
+		while ((location = source.fetchNext()) != null) {
+			blackhole.consume(location);
+		}
+	}
+
+	/**
+	 * Location source which reads the benchmark resource
+	 */
+	public static class LocationCsvSource extends AbstractCsvResourceSource<Location> {
+
+		public LocationCsvSource() throws IOException {
+			this(0);
+		}
+
+		public LocationCsvSource(int readAhead) throws IOException {
+			super("benchmark-location-source.csv", true, readAhead);
+		}
+
+		@Override
+		protected Location parseLine(String[] line) {
+			Location location = new Location();
+			location.setName(line[0]);
+			location.setDescription(line[1]);
+			location.setUuid(line[2]);
+			return location;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.hibernate.SessionFactory;
+import org.openmrs.Location;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.sync.MetadataSynchronizationRunner;
+import org.openmrs.module.metadatadeploy.sync.ObjectSynchronization;
+import org.openmrs.module.metadatadeploy.sync.ProjectedObjectSynchronization;
+import org.openmrs.module.metadatadeploy.sync.SyncProjection;
+import org.openmrs.module.metadatadeploy.sync.SyncResult;
+import org.openmrs.util.OpenmrsUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link MetadataSynchronizationRunner#run()} against the in-memory H2 database. The 2000 locations of
+ * the benchmark resource are synchronized once during setup, so each invocation measures a re-sync where nothing has
+ * changed, which is the common case at startup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 2, jvmArgs = { "-Xms1g", "-Xmx1g" })
+public class MetadataSynchronizationRunnerBenchmark {
+
+	/**
+	 * Whether existing objects are loaded in full or as projections
+	 */
+	@Param({ "full", "projected" })
+	public String mode;
+
+	private BenchmarkContext context = new BenchmarkContext();
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		context.start();
+		run();
+		Context.flushSession();
+		Context.clearSession();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		context.stop();
+	}
+
+	@Benchmark
+	public SyncResult<Location> run() throws Exception {
+		ObjectSynchronization<Location> sync = "projected".equals(mode) ? new ProjectedLocationSynchronization() : new LocationSynchronization();
+		return new MetadataSynchronizationRunner<Location>(new CsvResourceSourceBenchmark.LocationCsvSource(), sync).run();
+	}
+
+	/**
+	 * Location UUID based synchronization
+	 */
+	public static class LocationSynchronization implements ObjectSynchronization<Location> {
+
+		protected LocationService locationService = Context.getLocationService();
+
+		@Override
+		public List<Location> fetchAllExisting() {
+			return locationService.getAllLocations(true);
+		}
+
+		@Override
+		public Object getObjectSyncKey(Location obj) {
+			return obj.getUuid();
+		}
+
+		@Override
+		public boolean updateRequired(Location incoming, Location existing) {
+			return !(OpenmrsUtil.nullSafeEquals(incoming.getName(), existing.getName())
+					&& OpenmrsUtil.nullSafeEquals(incoming.getDescription(), existing.getDescription()));
+		}
+	}
+
+	/**
+	 * Location UUID based synchronization using projections
+	 */
+	public static class ProjectedLocationSynchronization extends LocationSynchronization implements ProjectedObjectSynchronization<Location> {
+
+		@Override
+		public List<SyncProjection> fetchAllExistingProjections() {
+			SessionFactory sessionFactory = Context.getRegisteredComponents(SessionFactory.class).get(0);
+			List<Object[]> rows = sessionFactory.getCurrentSession()
+					.createQuery("select l.uuid, l.locationId, l.name, l.description, l.retired from Location l").list();
+
+			List<SyncProjection> projections = new ArrayList<SyncProjection>();
+			for (Object[] row : rows) {
+				projections.add(new SyncProjection(row[0], (Integer) row[1], row[2] + "|" + row[3], (Boolean) row[4]));
+			}
+			return projections;
+		}
+
+		@Override
+		public Object getObjectContentHash(Location obj) {
+			return obj.getName() + "|" + obj.getDescription();
+		}
+
+		@Override
+		public Location fetchExisting(Integer id) {
+			return locationService.getLocation(id);
+		}
+	}
+}
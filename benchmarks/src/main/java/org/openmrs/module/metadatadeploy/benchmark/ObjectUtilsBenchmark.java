@@ -0,0 +1,82 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.metadatadeploy.ObjectUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link ObjectUtils#overwrite(OpenmrsObject, OpenmrsObject, java.util.Set)} and
+ * {@link ObjectUtils#differs(OpenmrsObject, OpenmrsObject, java.util.Set)} on flat and deep objects
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgs = { "-Xms1g", "-Xmx1g" })
+public class ObjectUtilsBenchmark {
+
+	/**
+	 * The shape of the object graph: a location with only simple fields, a concept with a name and description in
+	 * 20 locales plus 50 mappings, or a program with 5 workflows of 20 states each
+	 */
+	@Param({ "flat", "concept", "program" })
+	public String shape;
+
+	private OpenmrsObject incoming;
+
+	private OpenmrsObject existing;
+
+	@Setup
+	public void setup() {
+		if ("flat".equals(shape)) {
+			incoming = BenchmarkObjects.location(false);
+			existing = BenchmarkObjects.location(true);
+		}
+		else if ("concept".equals(shape)) {
+			incoming = BenchmarkObjects.concept(20, 50, false);
+			existing = BenchmarkObjects.concept(20, 50, true);
+		}
+		else {
+			incoming = BenchmarkObjects.program(5, 20, false);
+			existing = BenchmarkObjects.program(5, 20, true);
+		}
+	}
+
+	@Benchmark
+	public OpenmrsObject overwrite() {
+		ObjectUtils.overwrite(incoming, existing, null);
+		return existing;
+	}
+
+	@Benchmark
+	public boolean differs() {
+		return ObjectUtils.differs(incoming, existing, null);
+	}
+}